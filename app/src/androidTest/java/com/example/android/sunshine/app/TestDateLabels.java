@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks the date labels against the formats they stand for, and that a day's label is only
+    built once.
+ */
+public class TestDateLabels extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public void testLabels() {
+        DateLabels labels = DateLabels.get(mContext);
+        long now = System.currentTimeMillis();
+
+        assertEquals(mContext.getString(R.string.today), labels.getDayName(now));
+        assertEquals(mContext.getString(R.string.tomorrow),
+                labels.getDayName(now + DAY_IN_MILLIS));
+        long inThreeDays = now + 3 * DAY_IN_MILLIS;
+        assertEquals(new SimpleDateFormat("EEEE").format(inThreeDays),
+                labels.getFriendlyDayString(inThreeDays, false));
+        long inTenDays = now + 10 * DAY_IN_MILLIS;
+        assertEquals(new SimpleDateFormat("EEE MMM dd").format(inTenDays),
+                labels.getFriendlyDayString(inTenDays, false));
+
+        String monthDay = new SimpleDateFormat("MMMM dd").format(now);
+        assertEquals(monthDay, labels.getFormattedMonthDay(now));
+        assertEquals(mContext.getString(R.string.format_full_friendly_date,
+                mContext.getString(R.string.today), monthDay),
+                labels.getFriendlyDayString(now, true));
+    }
+
+    public void testLabelsAreKeptByDay() {
+        DateLabels labels = DateLabels.get(mContext);
+        assertSame(labels, DateLabels.get(mContext));
+
+        long inTenDays = System.currentTimeMillis() + 10 * DAY_IN_MILLIS;
+        String label = labels.getFriendlyDayString(inTenDays, false);
+        assertSame("Error: A day's label should only be built once",
+                label, labels.getFriendlyDayString(inTenDays + 1000, false));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+/*
+    Checks that going from one load of the forecast list to the next only touches the rows that
+    changed.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long TODAY = System.currentTimeMillis() / DAY_IN_MILLIS * DAY_IN_MILLIS;
+
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long", "location_id"
+    };
+
+    public void testOneChangedDayRebindsOneRow() {
+        ForecastItem[] before = load(3L, 0, 14, -1);
+        ForecastItem[] after = load(3L, 0, 14, 5);
+        assertEquals("changed 5 1 ", dispatch(before, after));
+        assertEquals("Error: The same forecast shouldn't touch any row",
+                "", dispatch(after, load(3L, 0, 14, 5)));
+    }
+
+    public void testNewDay() {
+        // At midnight today drops off the top and a day is added at the bottom
+        assertEquals("removed 0 1 inserted 13 1 ",
+                dispatch(load(3L, 0, 14, -1), load(3L, 1, 14, -1)));
+    }
+
+    public void testNewLocation() {
+        assertEquals("removed 0 1 inserted 0 1 removed 1 1 inserted 1 1 ",
+                dispatch(load(3L, 0, 2, -1), load(4L, 0, 2, -1)));
+        assertEquals("inserted 0 2 ", dispatch(new ForecastItem[0], load(4L, 0, 2, -1)));
+        assertEquals("removed 0 2 ", dispatch(load(4L, 0, 2, -1), new ForecastItem[0]));
+    }
+
+    // The days firstDay to firstDay + days of a location, the one at warmerDay a bit warmer
+    private ForecastItem[] load(long locationId, int firstDay, int days, int warmerDay) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day < firstDay + days; day++) {
+            double high = day == warmerDay ? 25 : 20;
+            cursor.addRow(new Object[]{(long) day, TODAY + day * DAY_IN_MILLIS, "Clear", high,
+                    10.0, "99705", 800, 64.7, -147.4, locationId});
+        }
+        ForecastItem[] items = ForecastItem.fromCursor(mContext, cursor);
+        cursor.close();
+        return items;
+    }
+
+    // What the adapter is told, e.g. "changed 5 1 " for notifyItemRangeChanged(5, 1)
+    private String dispatch(ForecastItem[] oldItems, ForecastItem[] newItems) {
+        final StringBuilder notified = new StringBuilder();
+        RecyclerView.Adapter adapter = new RecyclerView.Adapter() {
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                return null;
+            }
+
+            @Override
+            public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            }
+
+            @Override
+            public int getItemCount() {
+                return 0;
+            }
+        };
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                notified.append("changed ").append(positionStart).append(' ')
+                        .append(itemCount).append(' ');
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                notified.append("inserted ").append(positionStart).append(' ')
+                        .append(itemCount).append(' ');
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                notified.append("removed ").append(positionStart).append(' ')
+                        .append(itemCount).append(' ');
+            }
+
+            @Override
+            public void onChanged() {
+                notified.append("everything ");
+            }
+        });
+        ForecastDiff diff = ForecastDiff.between(oldItems, newItems);
+        assertSame(oldItems, diff.getFrom());
+        diff.dispatchTo(adapter);
+        return notified.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the prepared rows of the forecast list hold what binding a row used to work out
+    from the cursor.
+ */
+public class TestForecastItem extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // In the order of ForecastFragment.FORECAST_COLUMNS
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long", "location_id"
+    };
+
+    public void testItemsFromCursor() {
+        long now = System.currentTimeMillis();
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[]{1L, now, "Clear", 21.2, 8.4, "99705", 800, 64.7, -147.4, 3L});
+        cursor.addRow(new Object[]{2L, now + DAY_IN_MILLIS, "Rain", 18.0, 7.0, "99705", 501,
+                64.7, -147.4, 3L});
+
+        ForecastItem[] items = ForecastItem.fromCursor(mContext, cursor);
+        assertEquals(2, items.length);
+        assertEquals("Error: The cursor should be left before the first row",
+                -1, cursor.getPosition());
+
+        ForecastItem today = items[0];
+        assertEquals(ForecastItem.getStableId(3L, now), today.id);
+        assertEquals(now, today.date);
+        assertEquals(Utility.getIconResourceForWeatherCondition(800), today.iconResource);
+        assertEquals(Utility.getArtResourceForWeatherCondition(800), today.artResource);
+        assertEquals(Utility.getFriendlyDayString(mContext, now, false), today.dateLabel);
+        assertEquals(Utility.getFriendlyDayString(mContext, now, true), today.longDateLabel);
+        String description = Utility.getStringForWeatherCondition(mContext, 800);
+        assertEquals(description, today.description);
+        assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                today.descriptionForAccessibility);
+        assertEquals(Utility.formatTemperature(mContext, 21.2), today.high);
+        assertEquals(mContext.getString(R.string.a11y_high_temp,
+                Utility.formatTemperature(mContext, 21.2)), today.highForAccessibility);
+        assertEquals(Utility.formatTemperature(mContext, 8.4), today.low);
+        assertEquals("iconView" + today.id, today.transitionName);
+
+        assertEquals(Utility.usingLocalGraphics(mContext) ? null
+                : Utility.getArtUrlForWeatherCondition(mContext, 501), items[1].artUrl);
+        assertTrue(today.id != items[1].id);
+        cursor.close();
+    }
+
+    public void testStableIds() {
+        // Midnight UTC, the way dates are stored
+        long today = System.currentTimeMillis() / DAY_IN_MILLIS * DAY_IN_MILLIS;
+        assertEquals("Error: The id should only depend on the location and the day",
+                ForecastItem.getStableId(3L, today),
+                ForecastItem.getStableId(3L, today + DAY_IN_MILLIS / 2));
+        assertTrue(ForecastItem.getStableId(3L, today) !=
+                ForecastItem.getStableId(4L, today));
+        assertTrue(ForecastItem.getStableId(3L, today) !=
+                ForecastItem.getStableId(3L, today + DAY_IN_MILLIS));
+    }
+}
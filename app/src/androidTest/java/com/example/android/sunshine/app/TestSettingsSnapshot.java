@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot is only read once, and that changing a preference gets a
+    new one built with the new value.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mUnits == null) {
+            editor.remove(mUnitsKey);
+        } else {
+            editor.putString(mUnitsKey, mUnits);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    public void testSnapshotIsReused() {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        assertSame("Error: Nothing changed, so the snapshot should be reused",
+                settings, SettingsSnapshot.get(mContext));
+        assertEquals(mPrefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default)),
+                settings.getLocationSetting());
+    }
+
+    public void testChangeRebuildsSnapshot() {
+        final boolean metric = SettingsSnapshot.get(mContext).isMetric();
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(metric ?
+                R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+
+        // The listener is called on the main thread, so the new snapshot may take a moment
+        new PollingCheck(3000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).isMetric() != metric;
+            }
+        }.run();
+        assertEquals(!metric, Utility.isMetric(mContext));
+    }
+}
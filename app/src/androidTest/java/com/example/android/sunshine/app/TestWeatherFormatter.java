@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the formatter's tables hold the same strings the format resources produce, both
+    inside the tables and outside them, and that repeated values come back without being
+    formatted again.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    public void testTemperatures() {
+        WeatherFormatter formatter = WeatherFormatter.get(mContext);
+        String format = mContext.getString(R.string.format_temperature);
+        for (double celsius = -80; celsius <= 80; celsius += 0.7) {
+            if (!isNegativeZero(celsius)) {
+                assertEquals(String.format(format, celsius),
+                        formatter.formatTemperature(celsius, true));
+            }
+            double fahrenheit = celsius * 1.8 + 32;
+            if (!isNegativeZero(fahrenheit)) {
+                assertEquals(String.format(format, fahrenheit),
+                        formatter.formatTemperature(celsius, false));
+            }
+        }
+        // Where String.format would put a minus sign before 0 the formatter leaves it out
+        assertEquals(String.format(format, 0.0), formatter.formatTemperature(-0.3, true));
+        // Outside the tables
+        assertEquals(String.format(format, 1234.0), formatter.formatTemperature(1234, true));
+
+        assertEquals(mContext.getString(R.string.a11y_high_temp, String.format(format, 21.0)),
+                formatter.formatHighTempDescription(21.2, true));
+        assertEquals(mContext.getString(R.string.a11y_low_temp, String.format(format, 8.0)),
+                formatter.formatLowTempDescription(7.6, true));
+
+        assertSame("Error: A repeated temperature should come from the table",
+                formatter.formatTemperature(21.2, true), formatter.formatTemperature(20.9, true));
+    }
+
+    public void testPressureAndHumidity() {
+        WeatherFormatter formatter = WeatherFormatter.get(mContext);
+        for (float pressure = 800; pressure < 1150; pressure += 3.3f) {
+            assertEquals(mContext.getString(R.string.format_pressure, pressure),
+                    formatter.formatPressure(pressure));
+        }
+        for (float humidity = 0; humidity <= 100; humidity += 1.5f) {
+            assertEquals(mContext.getString(R.string.format_humidity, humidity),
+                    formatter.formatHumidity(humidity));
+        }
+    }
+
+    public void testWind() {
+        WeatherFormatter formatter = WeatherFormatter.get(mContext);
+        String kmh = mContext.getString(R.string.format_wind_kmh);
+        String mph = mContext.getString(R.string.format_wind_mph);
+        String[] directions = {"N", "NE", "E", "SE", "S", "SW", "W", "NW", "N"};
+        for (int i = 0; i < directions.length; i++) {
+            // Half way between two compass points belongs to the later one
+            float degrees = i * 45 - 22.5f;
+            String direction = directions[i];
+            if (degrees < 0) {
+                degrees += 360;
+            }
+            assertEquals(String.format(kmh, 12.4f, direction),
+                    formatter.formatWind(12.4f, degrees, true));
+            assertEquals(String.format(mph, .621371192237334f * 12.4f, direction),
+                    formatter.formatWind(12.4f, degrees, false));
+            assertEquals(String.format(kmh, 400f, direction),
+                    formatter.formatWind(400f, degrees, true));
+        }
+        assertEquals(String.format(kmh, 5f, "Unknown"), formatter.formatWind(5f, Float.NaN, true));
+    }
+
+    // Rounds to zero, but would be formatted with a minus sign
+    private static boolean isNegativeZero(double temperature) {
+        return temperature < 0 && temperature > -0.5;
+    }
+}
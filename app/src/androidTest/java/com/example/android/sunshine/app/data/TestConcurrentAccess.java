@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Checks that the weather database runs in write-ahead-log mode, and measures how long reads
+    through the provider take while another thread keeps writing forecasts, the way the lists
+    and widgets read while a sync is running.
+ */
+public class TestConcurrentAccess extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentAccess.class.getSimpleName();
+
+    private static final long WRITE_LOAD_MILLIS = 3000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Not available before Honeycomb
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor c = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(c.moveToFirst());
+        assertEquals("Error: The weather database isn't in write-ahead-log mode",
+                "wal", c.getString(0).toLowerCase());
+        c.close();
+        dbHelper.close();
+    }
+
+    public void testReadLatencyDuringWrites() throws Throwable {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        final long locationRowId = ContentUris.parseId(locationUri);
+        final int forecastDays = mContext.getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, TestProvider.createBulkInsertWeatherValues(locationRowId));
+
+        final long writeUntil = SystemClock.elapsedRealtime() + WRITE_LOAD_MILLIS;
+        final int[] writes = new int[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Keep changing the forecast, so every bulkInsert really writes
+                while (SystemClock.elapsedRealtime() < writeUntil) {
+                    ContentValues[] values = TestProvider.createBulkInsertWeatherValues(locationRowId);
+                    for (ContentValues weatherValues : values) {
+                        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, writes[0] % 100);
+                    }
+                    mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+                    writes[0]++;
+                }
+            }
+        }, "ForecastWriter");
+
+        Uri forecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                locationValues.getAsString(LocationEntry.COLUMN_LOCATION_SETTING),
+                TestUtilities.TEST_DATE);
+        long[] latencies = new long[1024];
+        int reads = 0;
+
+        writer.start();
+        while (writer.isAlive()) {
+            long start = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver().query(forecastUri, null, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            // Make sure the rows are actually read, not just the query prepared
+            assertEquals(forecastDays, cursor.getCount());
+            cursor.close();
+
+            if (reads == latencies.length) {
+                latencies = Arrays.copyOf(latencies, reads * 2);
+            }
+            latencies[reads++] = System.nanoTime() - start;
+        }
+        writer.join();
+
+        assertTrue("Error: No reads completed during the write load", reads > 0);
+        Arrays.sort(latencies, 0, reads);
+        Log.d(LOG_TAG, reads + " reads during " + writes[0] + " writes. Read latency p50 " +
+                percentileMicros(latencies, reads, 50) + "us, p95 " +
+                percentileMicros(latencies, reads, 95) + "us, p99 " +
+                percentileMicros(latencies, reads, 99) + "us");
+    }
+
+    private static long percentileMicros(long[] sortedNanos, int count, int percentile) {
+        int index = Math.min(count - 1, (int) Math.ceil(count * percentile / 100.0) - 1);
+        return sortedNanos[Math.max(0, index)] / 1000;
+    }
+}
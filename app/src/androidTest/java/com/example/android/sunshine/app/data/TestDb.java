@@ -91,6 +91,9 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_ETAG);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_CONTENT_HASH);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
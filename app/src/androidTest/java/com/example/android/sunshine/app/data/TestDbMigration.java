@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashSet;
+
+/*
+    Builds a database the way version 2 of the app left it, fills it with a lot of history and
+    checks that opening it with the current WeatherDbHelper keeps every row, brings the schema up
+    to date, and doesn't take forever doing so.
+ */
+public class TestDbMigration extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigration.class.getSimpleName();
+
+    private static final int LOCATIONS = 100;
+    private static final int DAYS_PER_LOCATION = 1000;
+    private static final int WEATHER_ROWS = LOCATIONS * DAYS_PER_LOCATION;
+
+    // Generous, so slow emulators pass, but far below what a rebuild plus resync would cost
+    private static final long MAX_UPGRADE_MILLIS = 5000;
+
+    // The schema as version 2 created it.  Spelled out rather than built from the contract, since
+    // the contract moves on with the current version.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL );";
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromVersion2KeepsData() {
+        createVersion2Database();
+
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        long upgradeMillis = SystemClock.elapsedRealtime() - start;
+        Log.d(LOG_TAG, "Upgrading " + WEATHER_ROWS + " weather rows took " + upgradeMillis + "ms");
+
+        assertEquals("Error: Locations were lost in the upgrade",
+                LOCATIONS, count(db, WeatherContract.LocationEntry.TABLE_NAME));
+        assertEquals("Error: Forecasts were lost in the upgrade",
+                WEATHER_ROWS, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+
+        HashSet<String> locationColumns = new HashSet<String>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + WeatherContract.LocationEntry.TABLE_NAME + ")",
+                null);
+        int nameIndex = c.getColumnIndex("name");
+        while (c.moveToNext()) {
+            locationColumns.add(c.getString(nameIndex));
+        }
+        c.close();
+        assertTrue("Error: Upgrade didn't add the sync bookkeeping columns",
+                locationColumns.contains(WeatherContract.LocationEntry.COLUMN_ETAG) &&
+                locationColumns.contains(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED) &&
+                locationColumns.contains(WeatherContract.LocationEntry.COLUMN_CONTENT_HASH));
+
+        c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name = ?",
+                new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: Upgrade didn't create the location and date index", c.moveToFirst());
+        c.close();
+        db.close();
+
+        assertTrue("Error: Upgrading took " + upgradeMillis + "ms",
+                upgradeMillis <= MAX_UPGRADE_MILLIS);
+    }
+
+    private void createVersion2Database() {
+        File dbFile = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        dbFile.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertLocation = db.compileStatement("INSERT INTO location " +
+                    "(_id, location_setting, city_name, coord_lat, coord_long) VALUES (?, ?, ?, ?, ?)");
+            SQLiteStatement insertWeather = db.compileStatement("INSERT INTO weather " +
+                    "(location_id, date, short_desc, weather_id, min, max, humidity, pressure, " +
+                    "wind, degrees) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            for (int location = 1; location <= LOCATIONS; location++) {
+                insertLocation.bindLong(1, location);
+                insertLocation.bindString(2, "location " + location);
+                insertLocation.bindString(3, "City " + location);
+                insertLocation.bindDouble(4, 64.7488);
+                insertLocation.bindDouble(5, -147.353);
+                insertLocation.executeInsert();
+
+                for (int day = 0; day < DAYS_PER_LOCATION; day++) {
+                    insertWeather.bindLong(1, location);
+                    insertWeather.bindLong(2, TestUtilities.TEST_DATE + day * 86400000L);
+                    insertWeather.bindString(3, "Asteroids");
+                    insertWeather.bindLong(4, 321);
+                    insertWeather.bindDouble(5, 65);
+                    insertWeather.bindDouble(6, 75);
+                    insertWeather.bindDouble(7, 1.2);
+                    insertWeather.bindDouble(8, 1.3);
+                    insertWeather.bindDouble(9, 5.5);
+                    insertWeather.bindDouble(10, 1.1);
+                    insertWeather.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(2);
+        db.close();
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        c.moveToFirst();
+        int count = c.getInt(0);
+        c.close();
+        return count;
+    }
+}
@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -30,6 +32,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +516,155 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // The sync adapter writes the location, the forecast and the purge of old days as one batch.
+    public void testApplyBatch() throws Throwable {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        // The location doesn't exist yet, so the rows get its id from the first operation
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(-1);
+        for (ContentValues weatherValues : bulkInsertContentValues) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // and the first day is already in the past
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{bulkInsertContentValues[0].getAsString(WeatherEntry.COLUMN_DATE)})
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(operations.size(), results.length);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        assertTrue("Error: Location was not inserted", locationRowId != -1);
+        assertEquals("Error: Wrong number of old days purged",
+                1, (int) results[results.length - 1].count);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 1; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            ContentValues expectedValues = new ContentValues(bulkInsertContentValues[i]);
+            expectedValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            TestUtilities.validateCurrentRecord("testApplyBatch.  Error validating WeatherEntry " + i,
+                    cursor, expectedValues);
+        }
+        cursor.close();
+    }
+
+    // Re-sending a forecast must not churn the table: identical rows are left alone, changed rows
+    // are updated in place and keep their _ID.
+    public void testBulkInsertOnlyWritesChangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        long[] originalIds = getWeatherIds();
+
+        // The same forecast again changes nothing
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: Identical rows should not be written", 0, insertCount);
+
+        // One day changed
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                changedValues);
+        assertEquals("Error: Only the changed row should be written", 1, insertCount);
+
+        long[] ids = getWeatherIds();
+        assertEquals(originalIds.length, ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: Row ids should be stable across writes", originalIds[i], ids[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testBulkInsertOnlyWritesChangedRows.  Error validating WeatherEntry " + i,
+                    cursor, changedValues[i]);
+        }
+        cursor.close();
+    }
+
+    // The widgets read today's weather of all their locations in one query
+    public void testWeatherForSeveralLocationsOnADay() {
+        String[] locationSettings = {TestUtilities.TEST_LOCATION, "London, UK", "Nowhere"};
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < 2; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSettings[i]);
+            Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                    locationValues);
+            long locationRowId = ContentUris.parseId(locationUri);
+
+            ContentValues today = TestUtilities.createWeatherValues(locationRowId);
+            today.put(WeatherEntry.COLUMN_SHORT_DESC, locationSettings[i]);
+            ContentValues tomorrow = TestUtilities.createWeatherValues(locationRowId);
+            tomorrow.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + millisecondsInADay);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    new ContentValues[]{today, tomorrow});
+        }
+
+        Uri uri = WeatherEntry.buildWeatherLocationsWithDate(locationSettings,
+                TestUtilities.TEST_DATE);
+        assertEquals(WeatherEntry.CONTENT_TYPE, mContext.getContentResolver().getType(uri));
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING, WeatherEntry.COLUMN_SHORT_DESC},
+                null,
+                null,
+                LocationEntry.COLUMN_LOCATION_SETTING + " ASC"
+        );
+        assertEquals("Error: There should be one row for each location that has weather",
+                2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertEquals(cursor.getString(0), cursor.getString(1));
+        }
+        cursor.close();
+    }
+
+    private long[] getWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
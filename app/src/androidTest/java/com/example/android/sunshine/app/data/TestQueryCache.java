@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that repeated forecast queries are answered from the provider's query cache, and that
+    every change the provider makes to the data drops the cached results, while writes that
+    change nothing leave them alone.
+ */
+public class TestQueryCache extends AndroidTestCase {
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private Uri mTodayUri;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        mLocationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mLocationRowId));
+
+        mTodayUri = WeatherEntry.buildWeatherLocationWithDate(
+                locationValues.getAsString(LocationEntry.COLUMN_LOCATION_SETTING),
+                TestUtilities.TEST_DATE);
+    }
+
+    public void testRepeatedQueriesAreCached() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // The cache needs Cursor.getType, and the counters ContentProvider.call()
+            return;
+        }
+        // The first read fills the cache
+        assertEquals(75.0, readMaxTemp());
+        long[] stats = getStats();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(75.0, readMaxTemp());
+        }
+        long[] afterReads = getStats();
+        assertEquals("Error: Repeated reads should be cache hits", stats[0] + 10, afterReads[0]);
+        assertEquals("Error: Repeated reads shouldn't go to the database", stats[1], afterReads[1]);
+
+        // The other projection is a query of its own
+        Cursor cursor = mContext.getContentResolver().query(mTodayUri, null, null, null, null);
+        cursor.close();
+        assertEquals(afterReads[1] + 1, getStats()[1]);
+    }
+
+    public void testChangesInvalidateTheCache() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        assertEquals(75.0, readMaxTemp());
+
+        // Writing the same forecast again changes nothing, so the cached rows stay good
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{TestUtilities.createWeatherValues(mLocationRowId)});
+        long[] stats = getStats();
+        assertEquals(75.0, readMaxTemp());
+        assertEquals("Error: An unchanged forecast shouldn't drop the cache",
+                stats[0] + 1, getStats()[0]);
+
+        // A warmer forecast has to be read from the database
+        ContentValues warmer = TestUtilities.createWeatherValues(mLocationRowId);
+        warmer.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{warmer});
+        stats = getStats();
+        assertEquals(80.0, readMaxTemp());
+        assertEquals(stats[1] + 1, getStats()[1]);
+
+        // As does an update, and a delete
+        ContentValues colder = new ContentValues();
+        colder.put(WeatherEntry.COLUMN_MAX_TEMP, 60);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, colder, null, null);
+        assertEquals(60.0, readMaxTemp());
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        Cursor cursor = mContext.getContentResolver().query(mTodayUri, FORECAST_COLUMNS, null,
+                null, null);
+        assertEquals("Error: Deleted rows came back from the cache", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    private double readMaxTemp() {
+        Cursor cursor = mContext.getContentResolver().query(mTodayUri, FORECAST_COLUMNS, null,
+                null, null);
+        assertTrue("Error: No forecast for " + mTodayUri, cursor.moveToFirst());
+        double maxTemp = cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP));
+        cursor.close();
+        return maxTemp;
+    }
+
+    // Hits and misses so far
+    private long[] getStats() {
+        Bundle stats = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_QUERY_CACHE_STATS, null, null);
+        return new long[]{stats.getLong(WeatherContract.EXTRA_CACHE_HITS),
+                stats.getLong(WeatherContract.EXTRA_CACHE_MISSES)};
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+
+/*
+    Runs EXPLAIN QUERY PLAN over the queries the provider makes for each kind of URI it matches,
+    and fails if SQLite would have to walk a whole table to answer one.  The forecast history only
+    grows, so every read has to go through an index.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    private static final String LOCATION_QUERY = "99705";
+    private static final String OTHER_LOCATION_QUERY = "94043";
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+    private final HashSet<Integer> mCheckedMatches = new HashSet<Integer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testQueriesUseIndexes() {
+        // "weather/*"
+        assertIndexedQuery(WeatherEntry.buildWeatherLocation(LOCATION_QUERY),
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingSelection, null, null, SORT_ORDER, null),
+                new String[]{LOCATION_QUERY});
+
+        // "weather/*?date=", what the forecast list asks for
+        assertIndexedQuery(WeatherEntry.buildWeatherLocationWithStartDate(
+                        LOCATION_QUERY, TestUtilities.TEST_DATE),
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                        SORT_ORDER, null),
+                new String[]{LOCATION_QUERY, Long.toString(TestUtilities.TEST_DATE)});
+
+        // "weather/*/#"
+        assertIndexedQuery(WeatherEntry.buildWeatherLocationWithDate(
+                        LOCATION_QUERY, TestUtilities.TEST_DATE),
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null),
+                new String[]{LOCATION_QUERY, Long.toString(TestUtilities.TEST_DATE)});
+
+        // "weather_on_day/#?location_setting=..", what widgets of several locations ask for
+        String[] locationQueries = {LOCATION_QUERY, OTHER_LOCATION_QUERY};
+        assertIndexedQuery(WeatherEntry.buildWeatherLocationsWithDate(
+                        locationQueries, TestUtilities.TEST_DATE),
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.buildLocationSettingsAndDaySelection(
+                                locationQueries.length), null, null,
+                        null, null),
+                new String[]{LOCATION_QUERY, OTHER_LOCATION_QUERY,
+                        Long.toString(TestUtilities.TEST_DATE)});
+
+        // "weather", as used to look up the stored forecast of a location during a sync
+        assertIndexedQuery(WeatherEntry.CONTENT_URI,
+                SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, null,
+                        WeatherEntry.COLUMN_LOC_KEY + " = ?", null, null, null, null),
+                new String[]{"1"});
+
+        // "weather", as used by the provider to find the row a forecast day replaces
+        assertIndexedQuery(WeatherEntry.CONTENT_URI,
+                SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, null,
+                        WeatherProvider.sLocationIdAndDaySelection, null, null, null, null),
+                new String[]{"1", Long.toString(TestUtilities.TEST_DATE)});
+
+        // "location"
+        assertIndexedQuery(LocationEntry.CONTENT_URI,
+                SQLiteQueryBuilder.buildQueryString(false, LocationEntry.TABLE_NAME, null,
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?", null, null, null, null),
+                new String[]{LOCATION_QUERY});
+
+        // Make sure nobody adds a URI without also adding its query here
+        for (int match : WeatherProvider.MATCHES) {
+            assertTrue("Error: No query plan checked for URI match " + match,
+                    mCheckedMatches.contains(match));
+        }
+    }
+
+    private void assertIndexedQuery(Uri uri, String sql, String[] selectionArgs) {
+        int match = WeatherProvider.buildUriMatcher().match(uri);
+        assertTrue("Error: " + uri + " is not a URI the provider knows", match != UriMatcher.NO_MATCH);
+        mCheckedMatches.add(match);
+
+        Cursor plan = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        assertTrue("Error: No query plan for " + sql, plan.moveToFirst());
+        int detailIndex = plan.getColumnIndex("detail");
+        do {
+            String detail = plan.getString(detailIndex);
+            Log.d(LOG_TAG, uri + ": " + detail);
+            // "SCAN" means every row of a table (or of an index) gets visited, where a
+            // "SEARCH" only touches the rows it needs
+            assertFalse("Error: Full scan for " + uri + ": " + detail + " in " + sql,
+                    detail.startsWith("SCAN"));
+        } while (plan.moveToNext());
+        plan.close();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/*
+    Tests the primitive forecast batch the sync adapter writes through
+    WeatherContract.METHOD_WRITE_FORECAST, and compares how many rows per second it gets into the
+    database with bulkInsert of ContentValues.
+ */
+public class TestWeatherBatch extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherBatch.class.getSimpleName();
+
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    public void testWriteForecastOnlyWritesChangedRows() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // ContentProvider.call() arrived in Honeycomb
+            return;
+        }
+        Bundle written = writeForecast(createBatch(10, 0), null);
+        assertEquals(10, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+        long[] changedLocationIds = written.getLongArray(WeatherContract.EXTRA_CHANGED_LOCATION_IDS);
+        assertEquals(1, changedLocationIds.length);
+        assertEquals(mLocationRowId, changedLocationIds[0]);
+        long[] originalIds = getWeatherIds();
+
+        // The same forecast again changes nothing
+        written = writeForecast(createBatch(10, 0), null);
+        assertEquals("Error: Identical rows should not be written",
+                0, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+        assertEquals(0, written.getLongArray(WeatherContract.EXTRA_CHANGED_LOCATION_IDS).length);
+
+        // Every day a degree warmer, and the first day purged along the way
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+        written = writeForecast(createBatch(10, 1), operations);
+        assertEquals(10, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+        ContentProviderResult purgeResult = (ContentProviderResult)
+                written.getParcelableArray(WeatherContract.EXTRA_OPERATION_RESULTS)[0];
+        assertEquals(1, (int) purgeResult.count);
+
+        long[] ids = getWeatherIds();
+        assertEquals(originalIds.length - 1, ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: Updated rows should keep their ids", originalIds[i + 1], ids[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null,
+                null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        assertEquals(77.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+        cursor.close();
+    }
+
+    public void testRowWithoutDescriptionIsSkipped() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        WeatherBatch batch = createBatch(2, 0);
+        batch.add(mLocationRowId, TestUtilities.TEST_DATE + 2 * MILLISECONDS_IN_A_DAY, 321, null,
+                65, 75, 1.2, 1.3, 5.5, 1.1);
+        Bundle written = writeForecast(batch, null);
+        assertEquals("Error: Only the row without a description should be left out",
+                2, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+    }
+
+    public void testNewLocationGoesInWithTheForecast() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(createSouthPoleLocationValues())
+                .build());
+        WeatherBatch forecast = new WeatherBatch(3);
+        forecast.addAllForNewLocation(createBatch(3, 0), 0);
+
+        Bundle written = writeForecast(forecast, operations);
+        ContentProviderResult insertResult = (ContentProviderResult)
+                written.getParcelableArray(WeatherContract.EXTRA_OPERATION_RESULTS)[0];
+        long southPoleRowId = ContentUris.parseId(insertResult.uri);
+        assertEquals(3, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+        long[] changedLocationIds = written.getLongArray(WeatherContract.EXTRA_CHANGED_LOCATION_IDS);
+        assertEquals(1, changedLocationIds.length);
+        assertEquals("Error: The rows should be filed under the new location",
+                southPoleRowId, changedLocationIds[0]);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(southPoleRowId)},
+                null);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testFailedWriteLeavesNoLocation() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(createSouthPoleLocationValues())
+                .build());
+        // The North Pole is already there, so this insert fails, and the whole write with it
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        WeatherBatch forecast = new WeatherBatch(3);
+        forecast.addAllForNewLocation(createBatch(3, 0), 0);
+
+        try {
+            writeForecast(forecast, operations);
+            fail("Error: A location that is already there shouldn't be inserted again");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI, null,
+                null, null, null);
+        assertEquals("Error: The new location should have been rolled back with the rest",
+                1, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null, null,
+                null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testIngestionBenchmark() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        // A single sync, a busy sync of many locations, and a whole lot of history
+        for (int rows : new int[]{14, 1000, 100000}) {
+            // Building the input is part of both runs, since boxing the values into
+            // ContentValues is part of what the batch saves
+            long start = SystemClock.elapsedRealtime();
+            ContentValues[] values = createContentValues(rows);
+            int inserted = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            long contentValuesMillis = SystemClock.elapsedRealtime() - start;
+            assertEquals(rows, inserted);
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            start = SystemClock.elapsedRealtime();
+            Bundle written = writeForecast(createBatch(rows, 0), null);
+            long batchMillis = SystemClock.elapsedRealtime() - start;
+            assertEquals(rows, written.getInt(WeatherContract.EXTRA_CHANGED_ROWS));
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            Log.d(LOG_TAG, rows + " rows: bulkInsert " + rowsPerSecond(rows, contentValuesMillis) +
+                    " rows/s, forecast batch " + rowsPerSecond(rows, batchMillis) + " rows/s");
+        }
+    }
+
+    private WeatherBatch createBatch(int rows, int warmer) {
+        WeatherBatch batch = new WeatherBatch(rows);
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < rows; i++, date += MILLISECONDS_IN_A_DAY) {
+            batch.add(mLocationRowId, date, 321, "Asteroids", 65 - i % 10, 75 + warmer + i % 10,
+                    1.2, 1.3, 5.5, 1.1);
+        }
+        return batch;
+    }
+
+    private static ContentValues createSouthPoleLocationValues() {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "south pole");
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "South Pole");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, -90.0);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+        return locationValues;
+    }
+
+    // The same rows as createBatch(rows, 0)
+    private ContentValues[] createContentValues(int rows) {
+        ContentValues[] values = new ContentValues[rows];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < rows; i++, date += MILLISECONDS_IN_A_DAY) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i % 10);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 10);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private Bundle writeForecast(WeatherBatch batch, ArrayList<ContentProviderOperation> operations) {
+        Bundle extras = batch.toBundle();
+        if (operations != null) {
+            extras.putParcelableArrayList(WeatherContract.EXTRA_OPERATIONS, operations);
+        }
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_WRITE_FORECAST, null, extras);
+    }
+
+    private long[] getWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    private static long rowsPerSecond(int rows, long millis) {
+        return rows * 1000L / Math.max(1, millis);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/*
+    Checks that the Muzei artwork cache serves what it stored, shares files between identical
+    images, evicts the least recently used files, and scales images down to the screen.
+ */
+public class TestMuzeiArtCache extends AndroidTestCase {
+
+    private static final String KEY_SUNNY = "http://example.com/sunny.jpg@1080x1920";
+    private static final String KEY_CLEAR = "http://example.com/clear.jpg@1080x1920";
+    private static final String KEY_RAIN = "http://example.com/rain.jpg@1080x1920";
+
+    private void deleteCache() {
+        File[] files = new File(mContext.getFilesDir(), MuzeiArtCache.DIRECTORY).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteCache();
+        super.tearDown();
+    }
+
+    private static byte[] createJpeg(int width, int height, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    public void testHitIsCounted() {
+        byte[] image = createJpeg(16, 16, Color.BLUE);
+        File stored = MuzeiArtCache.store(mContext, KEY_SUNNY, image, 1000);
+        assertNotNull("Error: The image wasn't stored", stored);
+
+        long hits = MuzeiArtCache.getHitCount(mContext);
+        long bytesSaved = MuzeiArtCache.getBytesSaved(mContext);
+        assertEquals("Error: The cache didn't serve the stored image",
+                stored, MuzeiArtCache.getCached(mContext, KEY_SUNNY));
+        assertEquals(hits + 1, MuzeiArtCache.getHitCount(mContext));
+        assertEquals(bytesSaved + 1000, MuzeiArtCache.getBytesSaved(mContext));
+
+        assertNull("Error: The cache served an image it never stored",
+                MuzeiArtCache.getCached(mContext, KEY_RAIN));
+    }
+
+    public void testIdenticalImagesShareAFile() {
+        byte[] image = createJpeg(16, 16, Color.BLUE);
+        File sunny = MuzeiArtCache.store(mContext, KEY_SUNNY, image, 1000);
+        File clear = MuzeiArtCache.store(mContext, KEY_CLEAR, image.clone(), 1000);
+        assertEquals("Error: The same image was stored twice", sunny, clear);
+
+        File rain = MuzeiArtCache.store(mContext, KEY_RAIN, createJpeg(16, 16, Color.GRAY), 1000);
+        assertFalse("Error: Different images were stored in the same file", sunny.equals(rain));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() {
+        File sunny = MuzeiArtCache.store(mContext, KEY_SUNNY, createJpeg(16, 16, Color.BLUE), 1);
+        File rain = MuzeiArtCache.store(mContext, KEY_RAIN, createJpeg(16, 16, Color.GRAY), 1);
+        sunny.setLastModified(System.currentTimeMillis() - 60 * 1000);
+
+        MuzeiArtCache.trim(mContext, rain.length());
+        assertFalse("Error: The least recently used image wasn't evicted", sunny.exists());
+        assertTrue("Error: The most recently used image was evicted", rain.exists());
+        assertNull("Error: The cache served an evicted image",
+                MuzeiArtCache.getCached(mContext, KEY_SUNNY));
+    }
+
+    public void testImageIsScaledToTheScreen() {
+        byte[] scaled = MuzeiArtCache.scale(createJpeg(400, 300, Color.BLUE), 100, 150);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(scaled, 0, scaled.length, options);
+        // It still has to cover the screen either way up, so it's as long as the screen is
+        assertEquals(150, options.outWidth);
+        assertEquals(113, options.outHeight);
+    }
+
+    public void testOnlyCacheNamesAreServed() {
+        assertNull(MuzeiArtCache.getFile(mContext, "../shared_prefs/muzei_artwork.xml"));
+        assertNull(MuzeiArtCache.getFile(mContext, null));
+        assertNotNull(MuzeiArtCache.getFile(mContext, "0123abcd.jpg"));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+
+import com.example.android.sunshine.app.Utility;
+
+/*
+    Lets the tests of the snapshot's consumers do what the sync adapter does once it has written
+    a forecast.
+ */
+public class SnapshotTestUtilities {
+
+    /**
+     * Reads and publishes the forecast of the preferred location, like the end of a sync.
+     */
+    public static WeatherSnapshot publish(Context context) {
+        WeatherSnapshot snapshot = WeatherSnapshot.read(context,
+                Utility.getPreferredLocation(context));
+        WeatherSnapshot.publish(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Forgets the published snapshot, so the next consumer reads a new one.
+     */
+    public static void clear() {
+        WeatherSnapshot.publish(null);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Semaphore;
+
+/*
+    Checks that a forecast is recognized as unchanged by what it says, whatever else in the body
+    changes from call to call, and that a forecast with a day that can't be stored is rejected.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    private static final int JULIAN_START_DAY = 2457013;
+
+    private static ForecastFetcher.Result read(String json, String lastContentHash)
+            throws Exception {
+        ForecastFetcher.TrackedLocation location = new ForecastFetcher.TrackedLocation(
+                "94043", 1, null, null, lastContentHash);
+        ForecastFetcher fetcher = new ForecastFetcher(null, location, JULIAN_START_DAY,
+                new Semaphore(1));
+        ForecastFetcher.Result result = new ForecastFetcher.Result(location);
+        fetcher.readForecast(new ByteArrayInputStream(json.getBytes("UTF-8")), result);
+        return result;
+    }
+
+    public void testOnlyTheMessageChanged() throws Exception {
+        String json = TestForecastJsonParser.FORECAST_JSON;
+        ForecastFetcher.Result first = read(json, null);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, first.status);
+        assertFalse("Error: A forecast we never had can't be unchanged", first.unchanged);
+
+        // OpenWeatherMap sends a different "message" with every response
+        ForecastFetcher.Result second = read(json.replace("\"message\":0.0124",
+                "\"message\":0.0208"), first.contentHash);
+        assertEquals(first.contentHash, second.contentHash);
+        assertTrue("Error: The same forecast with another message should be unchanged",
+                second.unchanged);
+    }
+
+    public void testDayWithoutDescription() throws Exception {
+        String json = TestForecastJsonParser.FORECAST_JSON.replace("\"main\":\"Clear\",", "");
+        try {
+            read(json, null);
+            fail("Error: A day without a description should make the forecast invalid");
+        } catch (JSONException e) {
+            // expected, and reported as LOCATION_STATUS_SERVER_INVALID
+        }
+    }
+
+    public void testForecastChanged() throws Exception {
+        String json = TestForecastJsonParser.FORECAST_JSON;
+        ForecastFetcher.Result first = read(json, null);
+
+        ForecastFetcher.Result warmer = read(json.replace("\"max\":14.45", "\"max\":15.45"),
+                first.contentHash);
+        assertFalse("Error: A warmer day should be a change", warmer.unchanged);
+    }
+}
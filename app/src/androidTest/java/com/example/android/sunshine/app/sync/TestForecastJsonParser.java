@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    // A trimmed down copy of a real OpenWeatherMap daily forecast response
+    static final String FORECAST_JSON = "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\",\"population\":0}," +
+            "\"cod\":\"200\",\"message\":0.0124,\"cnt\":2,\"list\":[" +
+            "{\"dt\":1419192000,\"temp\":{\"day\":13.91,\"min\":9.12,\"max\":14.45,\"night\":9.12," +
+            "\"eve\":12.57,\"morn\":13.91},\"pressure\":1005.59,\"humidity\":100," +
+            "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}]," +
+            "\"speed\":3.66,\"deg\":172,\"clouds\":92,\"rain\":6}," +
+            "{\"dt\":1419278400,\"temp\":{\"day\":14.31,\"min\":6.81,\"max\":14.31,\"night\":6.81," +
+            "\"eve\":11.48,\"morn\":10.02},\"pressure\":1009.92,\"humidity\":90," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]," +
+            "\"speed\":1.42,\"deg\":310,\"clouds\":0}]}";
+
+    private static final String NOT_FOUND_JSON =
+            "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    static class RecordingCallback implements ForecastJsonParser.Callback {
+        String cityName;
+        double lat;
+        double lon;
+        final ArrayList<Object[]> days = new ArrayList<Object[]>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            this.cityName = cityName;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public void onDay(int dayIndex, double pressure, int humidity, double windSpeed,
+                          double windDirection, double high, double low,
+                          String description, int weatherId) {
+            days.add(new Object[]{dayIndex, pressure, humidity, windSpeed, windDirection, high,
+                    low, description, weatherId});
+        }
+    }
+
+    private static InputStream stream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    public void testParseForecast() throws Throwable {
+        RecordingCallback callback = new RecordingCallback();
+        int code = ForecastJsonParser.parse(stream(FORECAST_JSON), callback);
+
+        assertEquals("Error: Unexpected message code", HttpURLConnection.HTTP_OK, code);
+        assertEquals("Error: City name not parsed", "Mountain View", callback.cityName);
+        assertEquals(37.386051, callback.lat, 1e-6);
+        assertEquals(-122.083847, callback.lon, 1e-6);
+
+        assertEquals("Error: Wrong number of days parsed", 2, callback.days.size());
+        Object[] first = callback.days.get(0);
+        assertEquals(0, first[0]);
+        assertEquals(1005.59, (Double) first[1], 1e-6);
+        assertEquals(100, first[2]);
+        assertEquals(3.66, (Double) first[3], 1e-6);
+        assertEquals(172.0, (Double) first[4], 1e-6);
+        assertEquals(14.45, (Double) first[5], 1e-6);
+        assertEquals(9.12, (Double) first[6], 1e-6);
+        assertEquals("Rain", first[7]);
+        assertEquals(501, first[8]);
+
+        Object[] second = callback.days.get(1);
+        assertEquals(1, second[0]);
+        assertEquals("Clear", second[7]);
+        assertEquals(800, second[8]);
+    }
+
+    public void testParseNotFound() throws Throwable {
+        RecordingCallback callback = new RecordingCallback();
+        int code = ForecastJsonParser.parse(stream(NOT_FOUND_JSON), callback);
+
+        assertEquals("Error: Not found code not reported", HttpURLConnection.HTTP_NOT_FOUND, code);
+        assertNull("Error: No city expected for an error response", callback.cityName);
+        assertTrue("Error: No days expected for an error response", callback.days.isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the snapshot the sync adapter hands to the widgets, Muzei, the notification and
+    wear holds the forecast of the preferred location from today on, and that consumers get the
+    published one as long as it's still current.
+ */
+public class TestWeatherSnapshot extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private String mLocationSetting;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        WeatherSnapshot.publish(null);
+
+        mLocationSetting = Utility.getPreferredLocation(mContext);
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, mLocationSetting);
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // Yesterday, today and tomorrow
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[3];
+        for (int i = 0; i < days.length; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, today + (i - 1) * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Day " + i);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            days[i] = weatherValues;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WeatherSnapshot.publish(null);
+        super.tearDown();
+    }
+
+    public void testReadStartsToday() {
+        WeatherSnapshot snapshot = WeatherSnapshot.read(mContext, mLocationSetting);
+        assertEquals(mLocationSetting, snapshot.getLocationSetting());
+        assertEquals("Error: The snapshot should hold today and tomorrow", 2,
+                snapshot.getDayCount());
+        assertEquals(WeatherContract.normalizeDate(System.currentTimeMillis()),
+                snapshot.getDate(0));
+        assertEquals(801, snapshot.getWeatherId(0));
+        assertEquals("Day 1", snapshot.getShortDesc(0));
+        assertEquals(21.0, snapshot.getMaxTemp(0));
+        assertEquals(11.0, snapshot.getMinTemp(0));
+        assertEquals(802, snapshot.getWeatherId(1));
+        assertTrue(snapshot.getId(0) != snapshot.getId(1));
+    }
+
+    public void testGetReturnsThePublishedSnapshot() {
+        WeatherSnapshot published = WeatherSnapshot.read(mContext, mLocationSetting);
+        WeatherSnapshot.publish(published);
+        assertSame("Error: Consumers should get the snapshot the sync published",
+                published, WeatherSnapshot.get(mContext));
+
+        // One for another location is of no use, so a current one is read
+        WeatherSnapshot.publish(WeatherSnapshot.read(mContext, "somewhere else"));
+        WeatherSnapshot current = WeatherSnapshot.get(mContext);
+        assertEquals(mLocationSetting, current.getLocationSetting());
+        assertEquals(2, current.getDayCount());
+        assertSame(current, WeatherSnapshot.get(mContext));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.SnapshotTestUtilities;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the rows of the detail widget keep their ids across a sync, even if the weather
+    rows are written anew, so the launcher can tell the rows of a refresh apart from new ones.
+ */
+public class TestDetailWidgetRemoteViewsFactory extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 3;
+
+    private SharedPreferences mPrefs;
+    private String mArtPackKey;
+    private String mArtPack;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Art from the network would make the rows depend on how fast it comes in
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mArtPack = mPrefs.getString(mArtPackKey, null);
+        mPrefs.edit().putString(mArtPackKey,
+                mContext.getString(R.string.pref_art_pack_sunshine)).commit();
+        new PollingCheck(3000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).usingLocalGraphics();
+            }
+        }.run();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SnapshotTestUtilities.clear();
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mArtPack == null) {
+            editor.remove(mArtPackKey);
+        } else {
+            editor.putString(mArtPackKey, mArtPack);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    public void testRowIdsSurviveASync() {
+        writeForecast(-1);
+        SnapshotTestUtilities.publish(mContext);
+        // A widget that wasn't set up with a location shows the preferred one
+        DetailWidgetRemoteViewsFactory factory = new DetailWidgetRemoteViewsFactory(mContext,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+        factory.onCreate();
+        factory.onDataSetChanged();
+        assertEquals(DAYS, factory.getCount());
+        long[] ids = new long[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            ids[day] = factory.getItemId(day);
+        }
+        assertTrue(ids[0] != ids[1]);
+        assertTrue(factory.hasStableIds());
+
+        // The next sync writes the rows anew, so they get new _IDs, and tomorrow got warmer
+        writeForecast(1);
+        SnapshotTestUtilities.publish(mContext);
+        factory.onDataSetChanged();
+        assertEquals(DAYS, factory.getCount());
+        for (int day = 0; day < DAYS; day++) {
+            assertEquals("Error: The row of a day should keep its id", ids[day],
+                    factory.getItemId(day));
+        }
+        factory.onDestroy();
+    }
+
+    // Deletes the forecast and writes it again from today on, the day at warmerDay a bit warmer
+    private void writeForecast(int warmerDay) {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < days.length; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 10);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, i == warmerDay ? 25 : 20);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            days[i] = weatherValues;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+}
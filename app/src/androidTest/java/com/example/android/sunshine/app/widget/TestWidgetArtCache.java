@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that conditions without art in the art pack get the icon resource from the widget art
+    cache, rather than taking it down.
+ */
+public class TestWidgetArtCache extends AndroidTestCase {
+
+    // Squalls and a hurricane have no art of their own
+    private static final int SQUALLS = 771;
+    private static final int HURRICANE = 962;
+
+    private SharedPreferences mPrefs;
+    private String mArtPackKey;
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mArtPack = mPrefs.getString(mArtPackKey, null);
+        mPrefs.edit().putString(mArtPackKey,
+                mContext.getString(R.string.pref_art_pack_cute_dogs)).commit();
+        new PollingCheck(3000) {
+            @Override
+            protected boolean check() {
+                return !SettingsSnapshot.get(mContext).usingLocalGraphics();
+            }
+        }.run();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mArtPack == null) {
+            editor.remove(mArtPackKey);
+        } else {
+            editor.putString(mArtPackKey, mArtPack);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    public void testConditionWithoutArt() {
+        assertNull(SettingsSnapshot.get(mContext).getArtUrlForWeatherCondition(SQUALLS));
+        assertNull("Error: A condition without art should show the icon resource",
+                WidgetArtCache.get(mContext, SQUALLS));
+        assertNull(WidgetArtCache.get(mContext, HURRICANE));
+    }
+
+    public void testLoadSkipsConditionsWithoutArt() {
+        // Nothing is fetched, so it's all done at once
+        assertTrue(WidgetArtCache.load(mContext, new int[]{SQUALLS, HURRICANE, SQUALLS}, 0));
+        assertNull(WidgetArtCache.peek(mContext, SQUALLS));
+        assertNull(WidgetArtCache.peek(mContext, HURRICANE));
+    }
+}
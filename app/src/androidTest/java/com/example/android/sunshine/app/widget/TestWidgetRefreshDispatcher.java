@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that a burst of widget refresh requests only refreshes the widgets once, and that
+    requests from receivers are refreshed too.
+ */
+public class TestWidgetRefreshDispatcher extends AndroidTestCase {
+
+    public void testBurstIsMerged() {
+        // Let any window still open from elsewhere close first
+        waitForRefreshes(WidgetRefreshDispatcher.getRefreshCount());
+
+        final long refreshes = WidgetRefreshDispatcher.getRefreshCount();
+        long requests = WidgetRefreshDispatcher.getRequestCount();
+        long merged = WidgetRefreshDispatcher.getMergedCount();
+
+        WidgetRefreshDispatcher.requestRefresh(mContext, WidgetRefreshDispatcher.TODAY_WIDGETS);
+        WidgetRefreshDispatcher.requestRefresh(mContext, WidgetRefreshDispatcher.DETAIL_WIDGETS);
+        WidgetRefreshDispatcher.requestRefresh(mContext, WidgetRefreshDispatcher.ALL_WIDGETS);
+        WidgetRefreshDispatcher.requestRefresh(mContext, WidgetRefreshDispatcher.TODAY_WIDGETS);
+
+        assertEquals(requests + 5, WidgetRefreshDispatcher.getRequestCount());
+        assertEquals("Error: Only the first request for each kind of widget should count",
+                merged + 3, WidgetRefreshDispatcher.getMergedCount());
+
+        waitForRefreshes(refreshes + 1);
+        assertEquals("Error: The burst should have refreshed the widgets once",
+                refreshes + 1, WidgetRefreshDispatcher.getRefreshCount());
+    }
+
+    public void testRequestFromAReceiver() {
+        waitForRefreshes(WidgetRefreshDispatcher.getRefreshCount());
+        long refreshes = WidgetRefreshDispatcher.getRefreshCount();
+
+        // Outside of onReceive() there's no broadcast to hold, but the refresh still happens
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+            }
+        };
+        WidgetRefreshDispatcher.requestRefresh(receiver, mContext,
+                WidgetRefreshDispatcher.TODAY_WIDGETS);
+
+        waitForRefreshes(refreshes + 1);
+        assertEquals(refreshes + 1, WidgetRefreshDispatcher.getRefreshCount());
+    }
+
+    // Waits for the window to close, and then for as long again to catch any extra refreshes
+    private void waitForRefreshes(final long refreshes) {
+        new PollingCheck(WidgetRefreshDispatcher.WINDOW_MILLIS * 4) {
+            @Override
+            protected boolean check() {
+                return WidgetRefreshDispatcher.getRefreshCount() >= refreshes;
+            }
+        }.run();
+        try {
+            Thread.sleep(WidgetRefreshDispatcher.WINDOW_MILLIS * 2);
+        } catch (InterruptedException e) {
+            fail("unexpected InterruptedException");
+        }
+    }
+}
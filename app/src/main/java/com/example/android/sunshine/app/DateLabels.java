@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * The labels the forecast list, the detail view and the widgets show for dates, such as
+ * "Today, June 24", "Tomorrow", "Wednesday" or "Mon Jun 30".
+ *
+ * A label only depends on the day, so each one is kept by its Julian day once it's been
+ * built, and asking for it again returns the same String.  Labels are relative to today and
+ * follow the locale and time zone, so they're all dropped at midnight, and when the time zone,
+ * the clock or the locale changes.
+ */
+public class DateLabels {
+
+    private static volatile DateLabels sCurrent;
+
+    // Registered with the application context the first time labels are asked for, and kept for
+    // as long as the process lives
+    private static BroadcastReceiver sReceiver;
+
+    private final Locale mLocale;
+    // The offset from UTC of the time zone when the labels were built, in seconds
+    private final long mGmtOff;
+    private final int mToday;
+    // When the day is over and the labels have to be built again, in System.currentTimeMillis()
+    // terms
+    private final long mExpires;
+
+    private final String mTodayLabel;
+    private final String mTomorrowLabel;
+    private final String mFullFriendlyDateFormat;
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+    private final SimpleDateFormat mShortDateFormat;
+
+    // Keyed by Julian day.  Guarded by this.
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+    private final SparseArray<String> mFullFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mShortDates = new SparseArray<String>();
+
+    private DateLabels(Context context, Locale locale) {
+        mLocale = locale;
+        Time time = new Time();
+        time.setToNow();
+        mGmtOff = time.gmtoff;
+        mToday = Time.getJulianDay(System.currentTimeMillis(), mGmtOff);
+        mExpires = time.setJulianDay(mToday + 1);
+
+        mTodayLabel = context.getString(R.string.today);
+        mTomorrowLabel = context.getString(R.string.tomorrow);
+        mFullFriendlyDateFormat = context.getString(R.string.format_full_friendly_date);
+        mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+    }
+
+    /**
+     * @return the labels for today, in the current locale and time zone
+     */
+    public static DateLabels get(Context context) {
+        Locale locale = Locale.getDefault();
+        DateLabels labels = sCurrent;
+        if (labels == null || System.currentTimeMillis() >= labels.mExpires ||
+                !labels.mLocale.equals(locale)) {
+            Context appContext = context.getApplicationContext();
+            registerReceiver(appContext);
+            labels = new DateLabels(appContext, locale);
+            sCurrent = labels;
+        }
+        return labels;
+    }
+
+    private static synchronized void registerReceiver(Context appContext) {
+        if (sReceiver != null) {
+            return;
+        }
+        sReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                sCurrent = null;
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        appContext.registerReceiver(sReceiver, filter);
+    }
+
+    /**
+     * The day string for the forecast list and the widgets:
+     * For today: "Today, June 8", or just "Today" unless displayLongToday is set
+     * For tomorrow:  "Tomorrow"
+     * For the next 5 days: "Wednesday" (just the day name)
+     * For all days after that: "Mon Jun 8"
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        if (displayLongToday && julianDay == mToday) {
+            return getFullFriendlyDayString(dateInMillis);
+        } else if (julianDay < mToday + 7) {
+            return getDayName(dateInMillis);
+        }
+        synchronized (this) {
+            String label = mShortDates.get(julianDay);
+            if (label == null) {
+                label = mShortDateFormat.format(dateInMillis);
+                mShortDates.put(julianDay, label);
+            }
+            return label;
+        }
+    }
+
+    /**
+     * @return the day name and the date, e.g. "Wednesday, June 24"
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        synchronized (this) {
+            String label = mFullFriendlyDays.get(julianDay);
+            if (label == null) {
+                label = String.format(mLocale, mFullFriendlyDateFormat,
+                        getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+                mFullFriendlyDays.put(julianDay, label);
+            }
+            return label;
+        }
+    }
+
+    /**
+     * @return "Today", "Tomorrow", or the name of the day of the week, e.g. "Wednesday"
+     */
+    public String getDayName(long dateInMillis) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        if (julianDay == mToday) {
+            return mTodayLabel;
+        } else if (julianDay == mToday + 1) {
+            return mTomorrowLabel;
+        }
+        synchronized (this) {
+            String label = mDayNames.get(julianDay);
+            if (label == null) {
+                label = mDayNameFormat.format(dateInMillis);
+                mDayNames.put(julianDay, label);
+            }
+            return label;
+        }
+    }
+
+    /**
+     * @return the month and day, e.g. "June 24"
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        synchronized (this) {
+            String label = mMonthDays.get(julianDay);
+            if (label == null) {
+                label = mMonthDayFormat.format(dateInMillis);
+                mMonthDays.put(julianDay, label);
+            }
+            return label;
+        }
+    }
+}
@@ -229,34 +229,35 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
             // Read high temperature from cursor and update view
             boolean isMetric = Utility.isMetric(getActivity());
+            WeatherFormatter formatter = WeatherFormatter.get(getActivity());
 
             double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
+            String highString = formatter.formatTemperature(high, isMetric);
             mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+            mHighTempView.setContentDescription(formatter.formatHighTempDescription(high, isMetric));
 
             // Read low temperature from cursor and update view
             double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
+            String lowString = formatter.formatTemperature(low, isMetric);
             mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+            mLowTempView.setContentDescription(formatter.formatLowTempDescription(low, isMetric));
 
             // Read humidity from cursor and update view
             float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+            mHumidityView.setText(formatter.formatHumidity(humidity));
             mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
             mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
 
             // Read wind speed and direction from cursor and update view
             float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
             float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+            mWindView.setText(formatter.formatWind(windSpeedStr, windDirStr, isMetric));
             mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
             mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
             // Read pressure from cursor and update view
             float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
+            mPressureView.setText(formatter.formatPressure(pressure));
             mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
             mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
 
@@ -29,8 +29,6 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -38,18 +36,33 @@ import com.example.android.sunshine.app.data.WeatherContract;
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
+    private static final String LOG_TAG = ForecastAdapter.class.getSimpleName();
+
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // How many binds the average bind time is logged over, in debug builds
+    private static final int BIND_TIME_SAMPLES = 50;
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // The rows of the cursor, ready to bind
+    private ForecastItem[] mItems = new ForecastItem[0];
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
 
+    // The sizes the art pack images are loaded at, in pixels
+    private final int mTodayIconSize;
+    private final int mListIconSize;
+
+    // Binds and the time they took since the average was last logged
+    private int mBindCount;
+    private long mBindNanos;
+
     /**
      * Cache of the children views for a forecast list item.
      */
@@ -73,9 +86,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mItems[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +99,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        // Rows are keyed by location and day, so the list can follow them across loads.  This
+        // has to be set before anything observes the adapter.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,26 +140,27 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        long bindStart = BuildConfig.DEBUG ? System.nanoTime() : 0;
+        // Everything the row shows was worked out when the forecast was loaded
+        ForecastItem item = mItems[position];
         int defaultImage;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = item.artResource;
                 useLongToday = true;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = item.iconResource;
                 useLongToday = false;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( item.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            // At the size the preloader loaded it at, so it comes straight from the memory cache
+            ForecastArtPreloader.loadArt(mContext, item.artUrl, getIconSize(position))
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,38 +168,42 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, item.transitionName);
 
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(
+                useLongToday ? item.longDateLabel : item.dateLabel);
 
         // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(item.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(
+                item.descriptionForAccessibility);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(item.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(item.highForAccessibility);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(item.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(item.lowForAccessibility);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        if (BuildConfig.DEBUG) {
+            recordBindTime(System.nanoTime() - bindStart);
+        }
+    }
+
+    private void recordBindTime(long nanos) {
+        mBindNanos += nanos;
+        if (++mBindCount == BIND_TIME_SAMPLES) {
+            Log.d(LOG_TAG, "Average bind time " + (mBindNanos / mBindCount / 1000) + "us over " +
+                    mBindCount + " binds");
+            mBindCount = 0;
+            mBindNanos = 0;
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -208,13 +229,59 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItems.length;
+    }
+
+    public ForecastItem getItem(int position) {
+        return mItems[position];
+    }
+
+    /**
+     * @return the size of the icon of the row, in pixels
+     */
+    public int getIconSize(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY ? mTodayIconSize : mListIconSize;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (position < 0 || position >= mItems.length) {
+            return RecyclerView.NO_ID;
+        }
+        return mItems[position].id;
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastItem[] oldItems = mItems;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if (newCursor instanceof ForecastLoader.ItemsCursor) {
+            ForecastLoader.ItemsCursor itemsCursor = (ForecastLoader.ItemsCursor) newCursor;
+            mItems = itemsCursor.getItems();
+            ForecastDiff diff = itemsCursor.getDiff();
+            if (diff.getFrom() == oldItems) {
+                // Only the rows that changed are rebound, and the rest keep their views
+                diff.dispatchTo(this);
+                if (mUseTodayLayout && oldItems.length > 0 && mItems.length > 0 &&
+                        oldItems[0].id != mItems[0].id) {
+                    // Another day moved to the top and takes the "today" layout, and the one that
+                    // was there, if it's still in the list, gives it up
+                    notifyItemChanged(0);
+                    for (int position = 1; position < mItems.length; position++) {
+                        if (mItems[position].id == oldItems[0].id) {
+                            notifyItemChanged(position);
+                            break;
+                        }
+                    }
+                }
+            } else {
+                // The loader diffed against rows we never showed
+                notifyDataSetChanged();
+            }
+        } else {
+            // Not from a ForecastLoader, so the rows have to be built here
+            mItems = ForecastItem.fromCursor(mContext, newCursor);
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
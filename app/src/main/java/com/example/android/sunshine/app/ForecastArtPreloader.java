@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.BaseTarget;
+import com.bumptech.glide.request.target.SizeReadyCallback;
+
+/**
+ * Loads the art pack images of the forecast rows just past the edge of the list, in the
+ * direction it's scrolling, so they're decoded and in Glide's memory cache by the time their
+ * rows are bound.
+ *
+ * The art is requested at the exact size of the icon it goes in, through
+ * {@link #loadArt(Context, String, int)} both here and when binding, so the two requests share a
+ * cache entry.  There are only a handful of conditions, so most rows find their art in the
+ * memory cache, and each image is only decoded once per size.
+ *
+ * This does for a RecyclerView what Glide's ListPreloader does for a ListView, and keeps its
+ * targets in a ring the same way: reusing a target clears its last load, which leaves the
+ * image in the memory cache rather than holding on to it.
+ */
+public class ForecastArtPreloader extends RecyclerView.OnScrollListener {
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+    private final int mMaxPreload;
+
+    private final PreloadTarget[] mTargets;
+    private int mNextTarget;
+
+    // The rows preloaded last time, so scrolling within them doesn't start them again
+    private int mLastStart;
+    private int mLastEnd;
+
+    /**
+     * @param maxPreload how many rows past the edge of the list to load the art of
+     */
+    public ForecastArtPreloader(Context context, ForecastAdapter adapter, int maxPreload) {
+        mContext = context;
+        mAdapter = adapter;
+        mMaxPreload = maxPreload;
+        mTargets = new PreloadTarget[maxPreload + 1];
+        for (int i = 0; i < mTargets.length; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+    }
+
+    /**
+     * @return the request for the art of a condition at the size of the icon showing it
+     */
+    public static DrawableRequestBuilder<String> loadArt(Context context, String artUrl,
+                                                         int size) {
+        // The transformation is part of the cache key, so it's set here rather than left to
+        // the ImageView's scale type
+        return Glide.with(context)
+                .load(artUrl)
+                .override(size, size)
+                .fitCenter();
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        if (dy >= 0) {
+            preload(last + 1, last + 1 + mMaxPreload);
+        } else {
+            preload(first - mMaxPreload, first);
+        }
+    }
+
+    // Loads the art of the rows from start up to, but not including, end
+    private void preload(int start, int end) {
+        start = Math.max(0, start);
+        end = Math.min(mAdapter.getItemCount(), end);
+        // Only the rows that weren't in the last range
+        int from = start;
+        int to = end;
+        if (start >= mLastStart && start < mLastEnd) {
+            from = mLastEnd;
+        } else if (end > mLastStart && end <= mLastEnd) {
+            to = mLastStart;
+        }
+        mLastStart = start;
+        mLastEnd = end;
+
+        String lastUrl = null;
+        int lastSize = 0;
+        for (int position = from; position < to; position++) {
+            ForecastItem item = mAdapter.getItem(position);
+            if (item.artUrl == null) {
+                continue;
+            }
+            int size = mAdapter.getIconSize(position);
+            // Days in a row often have the same weather, and one request will do for them
+            if (size == lastSize && item.artUrl.equals(lastUrl)) {
+                continue;
+            }
+            lastUrl = item.artUrl;
+            lastSize = size;
+
+            PreloadTarget target = mTargets[mNextTarget];
+            mNextTarget = (mNextTarget + 1) % mTargets.length;
+            Glide.clear(target);
+            target.mSize = size;
+            loadArt(mContext, item.artUrl, size).into(target);
+        }
+    }
+
+    private static class PreloadTarget extends BaseTarget<GlideDrawable> {
+        int mSize;
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to show, it only had to be loaded
+        }
+
+        @Override
+        public void getSize(SizeReadyCallback cb) {
+            cb.onSizeReady(mSize, mSize);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The rows to remove, insert and rebind to get the forecast list from one load to the next.
+ *
+ * Both loads are sorted by date, so the diff is a single merge of the two: a day only in the old
+ * load is removed, a day only in the new one is inserted, and a day in both is rebound if
+ * anything it shows changed.  After a sync that changed one day, that's one row.
+ */
+class ForecastDiff {
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    // The rows the diff starts from
+    private final ForecastItem[] mFrom;
+
+    // (operation, position, count) triples, in the order they have to be dispatched.  Positions
+    // take the operations before them into account, the way RecyclerView expects.
+    private int[] mOps = new int[3 * 4];
+    private int mOpsLength;
+
+    private ForecastDiff(ForecastItem[] from) {
+        mFrom = from;
+    }
+
+    /**
+     * Works out the changes from one load to another.  Both have to be sorted by date.
+     */
+    static ForecastDiff between(ForecastItem[] oldItems, ForecastItem[] newItems) {
+        ForecastDiff diff = new ForecastDiff(oldItems);
+        int i = 0;
+        int j = 0;
+        // Where in the list the next change happens
+        int position = 0;
+        while (i < oldItems.length || j < newItems.length) {
+            if (j == newItems.length ||
+                    (i < oldItems.length && oldItems[i].date < newItems[j].date)) {
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (i == oldItems.length || newItems[j].date < oldItems[i].date) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else if (oldItems[i].id != newItems[j].id) {
+                // Same day, but of another location: the new row is inserted on the next pass
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else {
+                if (!oldItems[i].hasSameContent(newItems[j])) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private void add(int op, int position) {
+        // Runs of the same operation become one range
+        if (mOpsLength > 0 && mOps[mOpsLength - 3] == op) {
+            int start = mOps[mOpsLength - 2];
+            int count = mOps[mOpsLength - 1];
+            // Removals all happen at the same position, the rest follow on from each other
+            if ((op == OP_REMOVE && position == start) ||
+                    (op != OP_REMOVE && position == start + count)) {
+                mOps[mOpsLength - 1] = count + 1;
+                return;
+            }
+        }
+        if (mOpsLength == mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[mOpsLength++] = op;
+        mOps[mOpsLength++] = position;
+        mOps[mOpsLength++] = 1;
+    }
+
+    /**
+     * @return the rows the diff starts from
+     */
+    ForecastItem[] getFrom() {
+        return mFrom;
+    }
+
+    /**
+     * @return true if the two loads show the same thing
+     */
+    boolean isEmpty() {
+        return mOpsLength == 0;
+    }
+
+    /**
+     * Tells the adapter which rows changed.  Call it right after the adapter switched to the new
+     * rows.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOpsLength; i += 3) {
+            int position = mOps[i + 1];
+            int count = mOps[i + 2];
+            switch (mOps[i]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+}
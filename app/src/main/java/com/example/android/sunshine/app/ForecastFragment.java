@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -63,6 +62,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    // How many rows past the edge of the list the art pack images are loaded for
+    private static final int PRELOAD_ROWS = 5;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -80,7 +81,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +96,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_LOCATION_ID = 9;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -122,6 +125,17 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
         super.onResume();
+
+        // The rows were built for the settings, locale and day of the load, so if any of them
+        // changed while we were away (the loader outlives the activity) load them again
+        Cursor cursor = mForecastAdapter.getCursor();
+        if (cursor instanceof ForecastLoader.ItemsCursor &&
+                !((ForecastLoader.ItemsCursor) cursor).isCurrent(getActivity())) {
+            Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+            if (loader != null) {
+                loader.onContentChanged();
+            }
+        }
     }
 
     @Override
@@ -200,6 +214,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Gets the art of the rows about to scroll into view ready ahead of time
+        mRecyclerView.addOnScrollListener(
+                new ForecastArtPreloader(getActivity(), mForecastAdapter, PRELOAD_ROWS));
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -316,7 +334,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        // Builds the rows of the list as well, off the UI thread
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.format.Time;
+
+/**
+ * One row of the forecast list, with everything it shows already worked out: the icon and art,
+ * the labels and the content descriptions.
+ *
+ * The rows are built by {@link ForecastLoader} on the loader's thread, so binding a row on the
+ * UI thread only hands these to the views.  An item never changes once it's built.
+ */
+public class ForecastItem {
+    // Stays the same for a day of a location from one load to the next, see getStableId
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // The icon for the list, and the bigger art for the "today" layout
+    public final int iconResource;
+    public final int artResource;
+    // The art from the chosen art pack, or null if using the local graphics
+    public final String artUrl;
+    // Keeps the icon findable by the shared element transition across rotations, and stays
+    // with the day when rows before it come and go
+    public final String transitionName;
+
+    // The label for the list, and the longer one for the "today" layout
+    public final String dateLabel;
+    public final String longDateLabel;
+
+    public final String description;
+    public final String descriptionForAccessibility;
+    public final String high;
+    public final String highForAccessibility;
+    public final String low;
+    public final String lowForAccessibility;
+
+    private ForecastItem(Context context, SettingsSnapshot settings, WeatherFormatter formatter,
+                         DateLabels labels, Cursor cursor) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        id = getStableId(cursor.getLong(ForecastFragment.COL_LOCATION_ID), date);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = settings.usingLocalGraphics() ? null
+                : settings.getArtUrlForWeatherCondition(weatherId);
+        transitionName = "iconView" + id;
+
+        dateLabel = labels.getFriendlyDayString(date, false);
+        longDateLabel = labels.getFriendlyDayString(date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionForAccessibility = context.getString(R.string.a11y_forecast, description);
+
+        double maxTemp = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        high = formatter.formatTemperature(maxTemp, settings.isMetric());
+        highForAccessibility = formatter.formatHighTempDescription(maxTemp, settings.isMetric());
+        double minTemp = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        low = formatter.formatTemperature(minTemp, settings.isMetric());
+        lowForAccessibility = formatter.formatLowTempDescription(minTemp, settings.isMetric());
+    }
+
+    /**
+     * The list keys its rows by what they are rather than by the _ID of the weather row, which
+     * is only as stable as the way the row was written: the location in the upper half, and the
+     * day in the lower half.
+     *
+     * @param locationId the _ID of the location
+     * @param date the normalized date of the day, in milliseconds
+     */
+    public static long getStableId(long locationId, long date) {
+        return (locationId << 32) | Time.getJulianDay(date, 0);
+    }
+
+    /**
+     * @return true if binding the other item would show exactly the same as this one
+     */
+    public boolean hasSameContent(ForecastItem other) {
+        // Most of the strings come from the same tables, so they're usually the same instances
+        return iconResource == other.iconResource &&
+                artResource == other.artResource &&
+                equals(artUrl, other.artUrl) &&
+                equals(dateLabel, other.dateLabel) &&
+                equals(longDateLabel, other.longDateLabel) &&
+                equals(description, other.description) &&
+                equals(high, other.high) &&
+                equals(highForAccessibility, other.highForAccessibility) &&
+                equals(low, other.low) &&
+                equals(lowForAccessibility, other.lowForAccessibility);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Builds the rows for every day of a forecast cursor, in the columns of
+     * ForecastFragment.FORECAST_COLUMNS.  Leaves the cursor before the first row.
+     */
+    public static ForecastItem[] fromCursor(Context context, Cursor cursor) {
+        return fromCursor(context, SettingsSnapshot.get(context), WeatherFormatter.get(context),
+                DateLabels.get(context), cursor);
+    }
+
+    static ForecastItem[] fromCursor(Context context, SettingsSnapshot settings,
+                                     WeatherFormatter formatter, DateLabels labels,
+                                     Cursor cursor) {
+        if (cursor == null) {
+            return new ForecastItem[0];
+        }
+        ForecastItem[] items = new ForecastItem[cursor.getCount()];
+        for (int i = 0; i < items.length && cursor.moveToPosition(i); i++) {
+            items[i] = new ForecastItem(context, settings, formatter, labels, cursor);
+        }
+        cursor.moveToPosition(-1);
+        return items;
+    }
+}
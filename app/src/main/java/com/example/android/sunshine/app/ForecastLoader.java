@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * Loads the forecast like a {@link CursorLoader}, and then, still on the loader's thread, builds
+ * the {@link ForecastItem} for every row, so the list has nothing left to work out when it
+ * binds them.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    // The rows of the last load, which the next one is diffed against.  Only touched by
+    // loadInBackground, which never runs twice at once.
+    private ForecastItem[] mLastItems = new ForecastItem[0];
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ItemsCursor itemsCursor = new ItemsCursor(getContext(), cursor, mLastItems);
+        mLastItems = itemsCursor.getItems();
+        return itemsCursor;
+    }
+
+    /**
+     * The loaded cursor, along with the rows built from it and how they differ from the last
+     * load's.
+     */
+    public static class ItemsCursor extends CursorWrapper {
+        private final ForecastItem[] mItems;
+        private final ForecastDiff mDiff;
+
+        // What the rows were built with, so it's known when they're out of date
+        private final SettingsSnapshot mSettings;
+        private final WeatherFormatter mFormatter;
+        private final DateLabels mLabels;
+
+        ItemsCursor(Context context, Cursor cursor, ForecastItem[] lastItems) {
+            super(cursor);
+            mSettings = SettingsSnapshot.get(context);
+            mFormatter = WeatherFormatter.get(context);
+            mLabels = DateLabels.get(context);
+            mItems = ForecastItem.fromCursor(context, mSettings, mFormatter, mLabels, cursor);
+            mDiff = ForecastDiff.between(lastItems, mItems);
+        }
+
+        public ForecastItem[] getItems() {
+            return mItems;
+        }
+
+        /**
+         * @return the changes from the rows of the last load, see {@link ForecastDiff#getFrom()}
+         */
+        ForecastDiff getDiff() {
+            return mDiff;
+        }
+
+        /**
+         * @return false if the settings, the locale or the day have changed since the rows were
+         * built, and they need to be loaded again
+         */
+        public boolean isCurrent(Context context) {
+            return mSettings == SettingsSnapshot.get(context) &&
+                    mFormatter == WeatherFormatter.get(context) &&
+                    mLabels == DateLabels.get(context);
+        }
+    }
+}
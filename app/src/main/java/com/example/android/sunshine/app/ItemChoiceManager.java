@@ -44,6 +44,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Rows coming and going move the checked ones, so find them again by their ids
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +69,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
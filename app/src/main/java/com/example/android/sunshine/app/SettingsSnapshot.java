@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+/**
+ * The settings the forecast list, the detail view and the widgets read for every item they show,
+ * read out of the SharedPreferences once.
+ *
+ * Reading a setting the usual way means looking up the preference file and the key and default
+ * strings each time, and the list does that several times per row.  Instead one snapshot is
+ * kept in memory and a new one is built whenever a preference changes, so reading a setting is
+ * a field access.  A snapshot never changes once it's built, so it can be shared between threads
+ * as it is.
+ */
+public class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners, so this one is held here
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mLocationSetting;
+    private final boolean mMetric;
+    private final boolean mLatLonAvailable;
+    private final float mLatitude;
+    private final float mLongitude;
+    private final boolean mUsingLocalGraphics;
+    // The art URLs of the art pack, indexed by condition
+    private final String[] mArtUrls;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        mLatLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        mLatitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        mLongitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        mUsingLocalGraphics = artPack.equals(sunshineArtPack);
+        // The URLs only change with the art pack, so they are formatted here rather than per item
+        mArtUrls = WeatherConditions.formatArtUrls(artPack);
+    }
+
+    /**
+     * @return the settings as they are now
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot == null) {
+            snapshot = load(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    private static synchronized SettingsSnapshot load(final Context appContext) {
+        if (sCurrent != null) {
+            return sCurrent;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        // Registered before the first read, so a change made while reading can't be missed
+        if (sListener == null) {
+            final String statusKey = appContext.getString(R.string.pref_location_status_key);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    // Every sync writes the location status, which the snapshot doesn't hold
+                    if (!statusKey.equals(key)) {
+                        rebuild(appContext, prefs);
+                    }
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        sCurrent = new SettingsSnapshot(appContext, prefs);
+        return sCurrent;
+    }
+
+    private static synchronized void rebuild(Context appContext, SharedPreferences prefs) {
+        sCurrent = new SettingsSnapshot(appContext, prefs);
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public boolean isLocationLatLonAvailable() {
+        return mLatLonAvailable;
+    }
+
+    public float getLocationLatitude() {
+        return mLatitude;
+    }
+
+    public float getLocationLongitude() {
+        return mLongitude;
+    }
+
+    public boolean usingLocalGraphics() {
+        return mUsingLocalGraphics;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return url for the corresponding weather artwork of the chosen art pack. null if no
+     * relation is found.
+     */
+    public String getArtUrlForWeatherCondition(int weatherId) {
+        int condition = WeatherConditions.getCondition(weatherId);
+        if (condition == WeatherConditions.NONE) {
+            return null;
+        }
+        return mArtUrls[condition];
+    }
+}
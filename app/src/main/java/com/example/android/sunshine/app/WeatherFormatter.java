@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Formats temperatures, wind, pressure and humidity for display.
+ *
+ * Everything is shown rounded to whole units, and realistic weather only spans a few hundred of
+ * those, so each formatted string is kept in a table indexed by the rounded value the first
+ * time it's asked for.  After that, binding a list row or a widget gets the same String back
+ * without formatting anything.  Values outside the tables are formatted with a shared builder.
+ *
+ * The strings depend on the locale, so the tables are built again when it changes.  The units
+ * are passed in with each value; both unit systems share the temperature tables, and each has
+ * its own wind table.
+ */
+public class WeatherFormatter {
+
+    // Displayed temperatures, in either unit, that get a table entry
+    private static final int MIN_TEMPERATURE = -100;
+    private static final int MAX_TEMPERATURE = 150;
+    // Pressures in hPa, covering the lowest and highest ever recorded at sea level
+    private static final int MIN_PRESSURE = 850;
+    private static final int MAX_PRESSURE = 1100;
+    private static final int MAX_HUMIDITY = 100;
+    // Wind speeds in the displayed unit
+    private static final int MAX_WIND_SPEED = 250;
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    // Compass directions, N first, then clockwise in steps of 45 degrees
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private static volatile WeatherFormatter sCurrent;
+
+    private final Locale mLocale;
+
+    private final String mTemperatureFormat;
+    private final String mHighTempDescriptionFormat;
+    private final String mLowTempDescriptionFormat;
+    private final String mPressureFormat;
+    private final String mHumidityFormat;
+    private final String mWindKmhFormat;
+    private final String mWindMphFormat;
+
+    // The tables, filled in as values come up.  Strings are immutable, so a thread that
+    // doesn't see another's entry yet just formats the same string again.
+    private final String[] mTemperatures = new String[MAX_TEMPERATURE - MIN_TEMPERATURE + 1];
+    private final String[] mHighTempDescriptions = new String[mTemperatures.length];
+    private final String[] mLowTempDescriptions = new String[mTemperatures.length];
+    private final String[] mPressures = new String[MAX_PRESSURE - MIN_PRESSURE + 1];
+    private final String[] mHumidities = new String[MAX_HUMIDITY + 1];
+    // Indexed by direction * (MAX_WIND_SPEED + 1) + speed
+    private final String[] mWindsKmh = new String[DIRECTIONS.length * (MAX_WIND_SPEED + 1)];
+    private final String[] mWindsMph = new String[mWindsKmh.length];
+
+    // For the values that fall outside the tables
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final Formatter mFormatter;
+
+    private WeatherFormatter(Context context, Locale locale) {
+        mLocale = locale;
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mHighTempDescriptionFormat = context.getString(R.string.a11y_high_temp);
+        mLowTempDescriptionFormat = context.getString(R.string.a11y_low_temp);
+        mPressureFormat = context.getString(R.string.format_pressure);
+        mHumidityFormat = context.getString(R.string.format_humidity);
+        mWindKmhFormat = context.getString(R.string.format_wind_kmh);
+        mWindMphFormat = context.getString(R.string.format_wind_mph);
+        mFormatter = new Formatter(mBuilder, locale);
+    }
+
+    /**
+     * @return the formatter for the current locale
+     */
+    public static WeatherFormatter get(Context context) {
+        Locale locale = Locale.getDefault();
+        WeatherFormatter formatter = sCurrent;
+        if (formatter == null || !formatter.mLocale.equals(locale)) {
+            formatter = new WeatherFormatter(context.getApplicationContext(), locale);
+            sCurrent = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * @param temperature in Celsius, the way it's stored
+     * @param isMetric whether to show it in Celsius rather than Fahrenheit
+     * @return the temperature in whole degrees, with the degree sign
+     */
+    public String formatTemperature(double temperature, boolean isMetric) {
+        long degrees = round(toDisplayTemperature(temperature, isMetric));
+        if (degrees < MIN_TEMPERATURE || degrees > MAX_TEMPERATURE) {
+            return format(mTemperatureFormat, degrees);
+        }
+        int index = (int) degrees - MIN_TEMPERATURE;
+        String formatted = mTemperatures[index];
+        if (formatted == null) {
+            formatted = String.format(mLocale, mTemperatureFormat, (double) degrees);
+            mTemperatures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @return the content description of a high temperature, "High: " and the temperature
+     */
+    public String formatHighTempDescription(double temperature, boolean isMetric) {
+        return formatTempDescription(mHighTempDescriptions, mHighTempDescriptionFormat,
+                temperature, isMetric);
+    }
+
+    /**
+     * @return the content description of a low temperature, "Low: " and the temperature
+     */
+    public String formatLowTempDescription(double temperature, boolean isMetric) {
+        return formatTempDescription(mLowTempDescriptions, mLowTempDescriptionFormat,
+                temperature, isMetric);
+    }
+
+    private String formatTempDescription(String[] table, String format, double temperature,
+                                         boolean isMetric) {
+        String formattedTemperature = formatTemperature(temperature, isMetric);
+        long degrees = round(toDisplayTemperature(temperature, isMetric));
+        if (degrees < MIN_TEMPERATURE || degrees > MAX_TEMPERATURE) {
+            return String.format(mLocale, format, formattedTemperature);
+        }
+        int index = (int) degrees - MIN_TEMPERATURE;
+        String formatted = table[index];
+        if (formatted == null) {
+            formatted = String.format(mLocale, format, formattedTemperature);
+            table[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param pressure in hPa
+     */
+    public String formatPressure(double pressure) {
+        long hPa = round(pressure);
+        if (hPa < MIN_PRESSURE || hPa > MAX_PRESSURE) {
+            return format(mPressureFormat, hPa);
+        }
+        int index = (int) hPa - MIN_PRESSURE;
+        String formatted = mPressures[index];
+        if (formatted == null) {
+            formatted = String.format(mLocale, mPressureFormat, (double) hPa);
+            mPressures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param humidity in percent
+     */
+    public String formatHumidity(double humidity) {
+        long percent = round(humidity);
+        if (percent < 0 || percent > MAX_HUMIDITY) {
+            return format(mHumidityFormat, percent);
+        }
+        int index = (int) percent;
+        String formatted = mHumidities[index];
+        if (formatted == null) {
+            formatted = String.format(mLocale, mHumidityFormat, (double) percent);
+            mHumidities[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param windSpeed in km/h, the way it's stored
+     * @param degrees the direction the wind blows from, 0 being north
+     * @param isMetric whether to show the speed in km/h rather than mph
+     * @return the speed and compass direction, e.g. "12 km/h NW"
+     */
+    public String formatWind(float windSpeed, float degrees, boolean isMetric) {
+        String windFormat = isMetric ? mWindKmhFormat : mWindMphFormat;
+        if (!isMetric) {
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+        long speed = round(windSpeed);
+        int direction = getDirection(degrees);
+        if (direction < 0 || speed < 0 || speed > MAX_WIND_SPEED) {
+            String directionName = direction < 0 ? UNKNOWN_DIRECTION : DIRECTIONS[direction];
+            synchronized (mBuilder) {
+                mBuilder.setLength(0);
+                mFormatter.format(windFormat, (double) speed, directionName);
+                return mBuilder.toString();
+            }
+        }
+        String[] table = isMetric ? mWindsKmh : mWindsMph;
+        int index = direction * (MAX_WIND_SPEED + 1) + (int) speed;
+        String formatted = table[index];
+        if (formatted == null) {
+            formatted = String.format(mLocale, windFormat, (double) speed, DIRECTIONS[direction]);
+            table[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @return the index into DIRECTIONS of the compass direction nearest to the degrees, or -1 if
+     * they aren't a number
+     */
+    static int getDirection(float degrees) {
+        if (Float.isNaN(degrees)) {
+            return -1;
+        }
+        // Everything from 337.5 round to (but not including) 22.5 is north, and anything out
+        // of range is taken to be north as well
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return 0;
+        }
+        return (int) ((degrees + 22.5) / 45);
+    }
+
+    private static double toDisplayTemperature(double temperature, boolean isMetric) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        return isMetric ? temperature : (temperature * 1.8) + 32;
+    }
+
+    // Rounds half away from zero, the way %1.0f does
+    private static long round(double value) {
+        return value < 0 ? -Math.round(-value) : Math.round(value);
+    }
+
+    private String format(String format, long value) {
+        synchronized (mBuilder) {
+            mBuilder.setLength(0);
+            mFormatter.format(format, (double) value);
+            return mBuilder.toString();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results of recent forecast queries in memory.  After a sync the widgets, the
+ * notification, Muzei and the watch all ask for the same few rows; with this, only the first of
+ * them goes to the database.
+ *
+ * The rows are copied out of the database cursor, and every hit gets its own MatrixCursor over
+ * them.  Each entry remembers the generation it was read in, and the provider starts a new
+ * generation whenever it has changed the data.  Because the generation is taken before the
+ * query runs, a result read while a write was being committed is stale as soon as the write's
+ * invalidation lands, whichever finishes first.
+ */
+class QueryCache {
+
+    // Bigger results, like the whole history of a location, aren't worth keeping around
+    static final int MAX_ROWS_PER_ENTRY = 64;
+
+    // The cache is sized in rows
+    private static final int MAX_ROWS = 512;
+
+    private final LruCache<String, Entry> mEntries = new LruCache<String, Entry>(MAX_ROWS) {
+        @Override
+        protected int sizeOf(String key, Entry entry) {
+            return Math.max(1, entry.mRows.length);
+        }
+    };
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private static class Entry {
+        final String[] mColumnNames;
+        final Object[][] mRows;
+        final int mGeneration;
+
+        Entry(String[] columnNames, Object[][] rows, int generation) {
+            mColumnNames = columnNames;
+            mRows = rows;
+            mGeneration = generation;
+        }
+    }
+
+    /**
+     * The key for a query that takes everything but the projection and sort order from its URI.
+     */
+    static String getKey(Uri uri, String[] projection, String sortOrder) {
+        StringBuilder key = new StringBuilder(uri.toString()).append('|');
+        if (projection != null) {
+            for (String column : projection) {
+                key.append(column).append(',');
+            }
+        }
+        return key.append('|').append(sortOrder).toString();
+    }
+
+    /**
+     * The current generation, to be taken before running a query whose result will be put.
+     */
+    int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * @return a new cursor over the cached rows, or null if there is no entry for the key or it
+     * is from an older generation
+     */
+    Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.mGeneration != mGeneration.get()) {
+            mEntries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+
+        MatrixCursor cursor = new MatrixCursor(entry.mColumnNames, entry.mRows.length);
+        for (Object[] row : entry.mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Copies the rows of the cursor into the cache, unless there are too many of them or the data
+     * changed since the given generation.  The cursor is left before its first row.
+     */
+    @TargetApi(11)
+    void put(String key, int generation, Cursor cursor) {
+        int count = cursor.getCount();
+        if (count > MAX_ROWS_PER_ENTRY || generation != mGeneration.get()) {
+            return;
+        }
+        int columnCount = cursor.getColumnCount();
+        Object[][] rows = new Object[count][];
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                row[column] = getValue(cursor, column);
+            }
+            rows[i] = row;
+        }
+        cursor.moveToPosition(-1);
+        mEntries.put(key, new Entry(cursor.getColumnNames(), rows, generation));
+    }
+
+    /**
+     * Makes every entry stale.  Called after a change to the data has been committed.
+     */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+        mEntries.evictAll();
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    @TargetApi(11)
+    private static Object getValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Rows for the weather table, kept column by column in primitive arrays.
+ *
+ * A ContentValues boxes every number into a HashMap entry; a batch of 14 days (or of 20
+ * locations times 14 days) in here is just a handful of arrays, which the provider binds
+ * straight to a compiled statement.  Hand it to the provider with
+ * {@link WeatherContract#METHOD_WRITE_FORECAST}.
+ *
+ * The rows of a location that isn't in the database yet are filed under the operation of the
+ * same write that inserts it, and get its id once that has been applied.
+ */
+public class WeatherBatch {
+
+    private static final String KEY_LOCATION_OPERATIONS = "location_operation";
+
+    private int mSize;
+
+    long[] mLocationIds;
+    // The index of the operation that inserts the row's location, or -1 if it has an id
+    int[] mLocationOperations;
+    long[] mDates;
+    int[] mWeatherIds;
+    String[] mShortDescs;
+    double[] mMinTemps;
+    double[] mMaxTemps;
+    double[] mHumidities;
+    double[] mPressures;
+    double[] mWindSpeeds;
+    double[] mDegrees;
+
+    public WeatherBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        mLocationIds = new long[capacity];
+        mLocationOperations = new int[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mShortDescs = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds the forecast of one day.  The date is normalized by the provider.
+     */
+    public void add(long locationId, long date, int weatherId, String shortDesc,
+                    double minTemp, double maxTemp, double humidity, double pressure,
+                    double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            resize(Math.max(16, mSize * 2));
+        }
+        mLocationIds[mSize] = locationId;
+        mLocationOperations[mSize] = -1;
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mShortDescs[mSize] = shortDesc;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    /**
+     * Adds all the rows of another batch, filed under the given location.
+     */
+    public void addAll(WeatherBatch rows, long locationId) {
+        addAll(rows, locationId, -1);
+    }
+
+    /**
+     * Adds all the rows of another batch, filed under the location that the operation at the
+     * given index of the same write inserts.
+     */
+    public void addAllForNewLocation(WeatherBatch rows, int locationOperation) {
+        addAll(rows, -1, locationOperation);
+    }
+
+    private void addAll(WeatherBatch rows, long locationId, int locationOperation) {
+        if (mSize + rows.mSize > mDates.length) {
+            resize(Math.max(mSize + rows.mSize, mSize * 2));
+        }
+        Arrays.fill(mLocationIds, mSize, mSize + rows.mSize, locationId);
+        Arrays.fill(mLocationOperations, mSize, mSize + rows.mSize, locationOperation);
+        System.arraycopy(rows.mDates, 0, mDates, mSize, rows.mSize);
+        System.arraycopy(rows.mWeatherIds, 0, mWeatherIds, mSize, rows.mSize);
+        System.arraycopy(rows.mShortDescs, 0, mShortDescs, mSize, rows.mSize);
+        System.arraycopy(rows.mMinTemps, 0, mMinTemps, mSize, rows.mSize);
+        System.arraycopy(rows.mMaxTemps, 0, mMaxTemps, mSize, rows.mSize);
+        System.arraycopy(rows.mHumidities, 0, mHumidities, mSize, rows.mSize);
+        System.arraycopy(rows.mPressures, 0, mPressures, mSize, rows.mSize);
+        System.arraycopy(rows.mWindSpeeds, 0, mWindSpeeds, mSize, rows.mSize);
+        System.arraycopy(rows.mDegrees, 0, mDegrees, mSize, rows.mSize);
+        mSize += rows.mSize;
+    }
+
+    /**
+     * @return the index of the operation that inserts the location of the row at the given
+     * position, or -1 if the location is in the database already
+     */
+    public int getLocationOperation(int position) {
+        return mLocationOperations[position];
+    }
+
+    /**
+     * @return the index of the last operation that inserts a location of the batch, or -1 if
+     * all of them are in the database already
+     */
+    public int getLastLocationOperation() {
+        int last = -1;
+        for (int i = 0; i < mSize; i++) {
+            last = Math.max(last, mLocationOperations[i]);
+        }
+        return last;
+    }
+
+    /**
+     * Files the rows of new locations under the ids their inserts got.
+     *
+     * @param results the results of the operations applied so far
+     */
+    public void resolveLocationIds(ContentProviderResult[] results) {
+        for (int i = 0; i < mSize; i++) {
+            if (mLocationOperations[i] != -1) {
+                mLocationIds[i] = ContentUris.parseId(results[mLocationOperations[i]].uri);
+                mLocationOperations[i] = -1;
+            }
+        }
+    }
+
+    /**
+     * Feeds every row, apart from the location it's filed under, to a digest, so two batches
+     * with the same forecast give the same hash.
+     */
+    public void updateDigest(MessageDigest digest) {
+        Charset utf8 = Charset.forName("UTF-8");
+        ByteBuffer row = ByteBuffer.allocate(8 + 4 + 6 * 8);
+        for (int i = 0; i < mSize; i++) {
+            row.clear();
+            row.putLong(mDates[i])
+                    .putInt(mWeatherIds[i])
+                    .putDouble(mMinTemps[i])
+                    .putDouble(mMaxTemps[i])
+                    .putDouble(mHumidities[i])
+                    .putDouble(mPressures[i])
+                    .putDouble(mWindSpeeds[i])
+                    .putDouble(mDegrees[i]);
+            digest.update(row.array());
+            if (mShortDescs[i] != null) {
+                digest.update(mShortDescs[i].getBytes(utf8));
+            }
+            // Keeps one row's description from running into the next row
+            digest.update((byte) 0);
+        }
+    }
+
+    /**
+     * The row at the given position as ContentValues, for the places that still need them.
+     */
+    public ContentValues getContentValues(int position) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationIds[position]);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, mDates[position]);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[position]);
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, mShortDescs[position]);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[position]);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[position]);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[position]);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, mPressures[position]);
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[position]);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, mDegrees[position]);
+        return weatherValues;
+    }
+
+    /**
+     * Packs the batch into a Bundle, one array per column, keyed by the column name.  The arrays
+     * are trimmed to the size of the batch first.
+     */
+    public Bundle toBundle() {
+        resize(mSize);
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(WeatherEntry.COLUMN_LOC_KEY, mLocationIds);
+        bundle.putIntArray(KEY_LOCATION_OPERATIONS, mLocationOperations);
+        bundle.putLongArray(WeatherEntry.COLUMN_DATE, mDates);
+        bundle.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds);
+        bundle.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, mShortDescs);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_HUMIDITY, mHumidities);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_PRESSURE, mPressures);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_DEGREES, mDegrees);
+        return bundle;
+    }
+
+    /**
+     * Unpacks a batch packed by {@link #toBundle()}.
+     *
+     * @return the batch, or null if the bundle doesn't hold one
+     */
+    public static WeatherBatch fromBundle(Bundle bundle) {
+        long[] dates = bundle == null ? null : bundle.getLongArray(WeatherEntry.COLUMN_DATE);
+        if (dates == null) {
+            return null;
+        }
+        WeatherBatch batch = new WeatherBatch(0);
+        batch.mSize = dates.length;
+        batch.mDates = dates;
+        batch.mLocationIds = bundle.getLongArray(WeatherEntry.COLUMN_LOC_KEY);
+        batch.mLocationOperations = bundle.getIntArray(KEY_LOCATION_OPERATIONS);
+        if (batch.mLocationOperations == null) {
+            batch.mLocationOperations = new int[dates.length];
+            Arrays.fill(batch.mLocationOperations, -1);
+        }
+        batch.mWeatherIds = bundle.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        batch.mShortDescs = bundle.getStringArray(WeatherEntry.COLUMN_SHORT_DESC);
+        batch.mMinTemps = bundle.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP);
+        batch.mMaxTemps = bundle.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP);
+        batch.mHumidities = bundle.getDoubleArray(WeatherEntry.COLUMN_HUMIDITY);
+        batch.mPressures = bundle.getDoubleArray(WeatherEntry.COLUMN_PRESSURE);
+        batch.mWindSpeeds = bundle.getDoubleArray(WeatherEntry.COLUMN_WIND_SPEED);
+        batch.mDegrees = bundle.getDoubleArray(WeatherEntry.COLUMN_DEGREES);
+        return batch;
+    }
+
+    private void resize(int capacity) {
+        if (capacity == mDates.length) {
+            return;
+        }
+        mLocationIds = Arrays.copyOf(mLocationIds, capacity);
+        mLocationOperations = Arrays.copyOf(mLocationOperations, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+}
@@ -21,6 +21,8 @@ import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.format.Time;
 
+import java.util.List;
+
 /**
  * Defines table and column names for the weather database.
  */
@@ -43,17 +45,41 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // The weather of several locations on one day, e.g. for all the widgets at once
+    public static final String PATH_WEATHER_ON_DAY = "weather_on_day";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
+        return normalizeDate(startDate, new Time());
+    }
+
+    // Same as above, reusing the given Time for when a lot of dates need normalizing
+    public static long normalizeDate(long startDate, Time time) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
         time.set(startDate);
         int julianDay = Time.getJulianDay(startDate, time.gmtoff);
         return time.setJulianDay(julianDay);
     }
 
+    // ContentProvider.call() method that writes a WeatherBatch, packed with toBundle(), in a
+    // single transaction along with an optional list of ContentProviderOperations passed under
+    // EXTRA_OPERATIONS.  Rows of a new location get the id of the operation that inserts it.
+    // Only the rows that differ from what is stored are written.  The result
+    // holds the number of rows written, the ids of the locations they belong to, and the results
+    // of the operations.
+    public static final String METHOD_WRITE_FORECAST = "writeForecast";
+    public static final String EXTRA_OPERATIONS = "operations";
+    public static final String EXTRA_OPERATION_RESULTS = "operation_results";
+    public static final String EXTRA_CHANGED_ROWS = "changed_rows";
+    public static final String EXTRA_CHANGED_LOCATION_IDS = "changed_location_ids";
+
+    // ContentProvider.call() method that returns how many forecast queries were answered from the
+    // provider's query cache, and how many had to go to the database.
+    public static final String METHOD_GET_QUERY_CACHE_STATS = "getQueryCacheStats";
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+
     /* Inner class that defines the table contents of the location table */
     public static final class LocationEntry implements BaseColumns {
 
@@ -81,6 +107,15 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // HTTP validators returned by openweathermap along with the last forecast we accepted
+        // for this location, sent back on the next sync so the server can answer 304 Not Modified.
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+        // Hex encoded hash of the parsed forecast we last accepted for this location, so an
+        // identical forecast can be recognized even when the server doesn't send validators.
+        public static final String COLUMN_CONTENT_HASH = "content_hash";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +184,29 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * @return the URI of the weather of several locations on one day, in one query
+         */
+        public static Uri buildWeatherLocationsWithDate(String[] locationSettings, long date) {
+            Uri.Builder builder = BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_ON_DAY)
+                    .appendPath(Long.toString(normalizeDate(date)));
+            for (String locationSetting : locationSettings) {
+                builder.appendQueryParameter(LocationEntry.COLUMN_LOCATION_SETTING,
+                        locationSetting);
+            }
+            return builder.build();
+        }
+
+        public static String[] getLocationSettingsFromUri(Uri uri) {
+            List<String> locationSettings =
+                    uri.getQueryParameters(LocationEntry.COLUMN_LOCATION_SETTING);
+            return locationSettings.toArray(new String[locationSettings.size()]);
+        }
+
+        public static long getDayFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(1));
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,12 +30,42 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // The oldest version onUpgrade can migrate from.  Anything older gets recreated.
+    private static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
+    // The forecast is read one location at a time, from a given date onwards.  The UNIQUE
+    // constraint of the weather table leads with the date, so it can't serve that; this index
+    // can, and it hands the rows back already sorted by date.
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the database hands out a pool of connections, and readers
+        // (the lists, the widgets, Muzei) keep reading the last committed forecast while a sync
+        // is writing the next one, instead of waiting for it to finish.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean the helper can't be asked for it, so switch it on here
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB &&
+                Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
@@ -45,7 +77,11 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                // The sync bookkeeping is only known once a forecast has been accepted
+                LocationEntry.COLUMN_ETAG + " TEXT, " +
+                LocationEntry.COLUMN_LAST_MODIFIED + " TEXT, " +
+                LocationEntry.COLUMN_CONTENT_HASH + " TEXT " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,18 +117,51 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // This database is only a cache for online data, but throwing it away on every release
+        // means every user starts with an empty forecast and a full resync.  So the schema is
+        // moved forward one version at a time, keeping the locations and forecasts.  The whole
+        // upgrade runs in a single transaction, so a failed step leaves the old database intact.
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // Too old to bother with, discard the data and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        for (int version = oldVersion; version < newVersion; version++) {
+            migrate(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Takes the schema from the given version to the next one.  When you increment
+     * DATABASE_VERSION, add a step here that turns the previous schema into the one onCreate
+     * builds.  Prefer ALTER TABLE; for changes SQLite can't ALTER, create the new table, copy the
+     * rows over with INSERT INTO ... SELECT and drop the old one.
+     */
+    private static void migrate(SQLiteDatabase sqLiteDatabase, int fromVersion) {
+        switch (fromVersion) {
+            case 2:
+                // Version 3 keeps the validators and hash of the last forecast of each location
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_ETAG + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_LAST_MODIFIED + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_CONTENT_HASH + " TEXT");
+                break;
+            case 3:
+                // Version 4 indexes the weather table by location and date
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            default:
+                throw new IllegalStateException("No migration from database version " + fromVersion);
+        }
     }
 }
@@ -17,25 +17,63 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // While applyBatch is running on a thread, this holds the URIs its operations changed so the
+    // change notifications can be sent once, after the whole batch has been committed.
+    private final ThreadLocal<HashSet<Uri>> mBatchChangedUris = new ThreadLocal<HashSet<Uri>>();
+
+    // The forecast of a location as last read, until the provider changes the data
+    private final QueryCache mQueryCache = new QueryCache();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_FOR_LOCATIONS_WITH_DATE = 103;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    // Every kind of URI the provider matches, and its path.  buildUriMatcher() adds exactly
+    // these, and TestQueryPlan checks the query plan of each, so a new one can't go unchecked.
+    static final int[] MATCHES = {
+            WEATHER,
+            WEATHER_WITH_LOCATION,
+            WEATHER_WITH_LOCATION_AND_DATE,
+            WEATHER_FOR_LOCATIONS_WITH_DATE,
+            LOCATION
+    };
+    private static final String[] MATCH_PATHS = {
+            WeatherContract.PATH_WEATHER,
+            WeatherContract.PATH_WEATHER + "/*",
+            WeatherContract.PATH_WEATHER + "/*/#",
+            WeatherContract.PATH_WEATHER_ON_DAY + "/#",
+            WeatherContract.PATH_LOCATION
+    };
+
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,22 +90,99 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting IN (?, ?, ...) AND date = ?
+    static String buildLocationSettingsAndDaySelection(int locationCount) {
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry.TABLE_NAME)
+                .append('.').append(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)
+                .append(" IN (");
+        for (int i = 0; i < locationCount; i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        return selection.append(") AND ").append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                .append(" = ? ").toString();
+    }
+
+    //location_id = ? AND date = ?
+    static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    // The outcomes of writing a single weather row
+    private static final int WRITE_INSERTED = 0;
+    private static final int WRITE_UPDATED = 1;
+    private static final int WRITE_UNCHANGED = 2;
+    private static final int WRITE_FAILED = 3;
+
+    // The weather columns, in the order bindWeather binds them to ?1 .. ?10
+    private static final String[] sWeatherColumnParameters = {
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+
+    //UPDATE weather SET short_desc = ?1, ... WHERE location_id = ?9 AND date = ?10
+    //    AND (short_desc != ?1 OR ...)
+    private static final String sUpdateChangedWeatherSql;
+
+    //INSERT OR IGNORE INTO weather (short_desc, ...) VALUES (?1, ...)
+    private static final String sInsertNewWeatherSql;
+
+    static {
+        StringBuilder set = new StringBuilder();
+        StringBuilder changed = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        // The last two are the key of the row
+        for (int i = 0; i < sWeatherColumnParameters.length; i++) {
+            String column = sWeatherColumnParameters[i];
+            String parameter = "?" + (i + 1);
+            if (i < sWeatherColumnParameters.length - 2) {
+                if (i > 0) {
+                    set.append(", ");
+                    changed.append(" OR ");
+                }
+                set.append(column).append(" = ").append(parameter);
+                changed.append(column).append(" != ").append(parameter);
+            }
+            if (i > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(column);
+            values.append(parameter);
+        }
+
+        sUpdateChangedWeatherSql = "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " SET " + set +
+                " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?9 AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?10 AND (" + changed + ")";
+        sInsertNewWeatherSql = "INSERT OR IGNORE INTO " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " (" + columns + ") VALUES (" + values + ")";
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -93,6 +208,25 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getWeatherByLocationSettingsAndDate(
+            Uri uri, String[] projection, String sortOrder) {
+        String[] locationSettings = WeatherContract.WeatherEntry.getLocationSettingsFromUri(uri);
+        long date = WeatherContract.WeatherEntry.getDayFromUri(uri);
+
+        String[] selectionArgs = new String[locationSettings.length + 1];
+        System.arraycopy(locationSettings, 0, selectionArgs, 0, locationSettings.length);
+        selectionArgs[locationSettings.length] = Long.toString(date);
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                buildLocationSettingsAndDaySelection(locationSettings.length),
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
@@ -124,12 +258,11 @@ public class WeatherProvider extends ContentProvider {
         final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
         final String authority = WeatherContract.CONTENT_AUTHORITY;
 
-        // For each type of URI you want to add, create a corresponding code.
-        matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
-        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
-        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
-
-        matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        // For each type of URI you want to add, create a corresponding code.  They're all listed
+        // in MATCHES, along with their paths.
+        for (int i = 0; i < MATCHES.length; i++) {
+            matcher.addURI(authority, MATCH_PATHS[i], MATCHES[i]);
+        }
         return matcher;
     }
 
@@ -160,6 +293,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_FOR_LOCATIONS_WITH_DATE:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
@@ -175,13 +310,37 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+
+        // The forecast URIs take everything but the projection and sort order from the URI, so
+        // those are all it takes to tell their results apart.  Copying the rows into the cache
+        // needs Cursor.getType, which arrived in Honeycomb.
+        String cacheKey = null;
+        int cacheGeneration = 0;
+        if ((match == WEATHER_WITH_LOCATION || match == WEATHER_WITH_LOCATION_AND_DATE ||
+                match == WEATHER_FOR_LOCATIONS_WITH_DATE) &&
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            cacheKey = QueryCache.getKey(uri, projection, sortOrder);
+            retCursor = mQueryCache.get(cacheKey);
+            if (retCursor != null) {
+                retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+                return retCursor;
+            }
+            cacheGeneration = mQueryCache.getGeneration();
+        }
+
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
                 retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
                 break;
             }
+            // "weather_on_day/#"
+            case WEATHER_FOR_LOCATIONS_WITH_DATE: {
+                retCursor = getWeatherByLocationSettingsAndDate(uri, projection, sortOrder);
+                break;
+            }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
@@ -217,6 +376,9 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        if (cacheKey != null) {
+            mQueryCache.put(cacheKey, cacheGeneration, retCursor);
+        }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
         return retCursor;
     }
@@ -233,11 +395,15 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
+                long[] rowId = new long[1];
+                int result = writeWeather(db, values, rowId);
+                if ( result == WRITE_FAILED )
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                returnUri = WeatherContract.WeatherEntry.buildWeatherUri(rowId[0]);
+                if ( result == WRITE_UNCHANGED ) {
+                    // Nothing changed, so there's nobody to tell
+                    return returnUri;
+                }
                 break;
             }
             case LOCATION: {
@@ -251,7 +417,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -276,7 +442,7 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -310,38 +476,366 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
 
+    /**
+     * Applies the whole batch in a single transaction.  Observers are notified once per changed
+     * URI after the transaction has been committed, instead of once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        return applyBatch(null, null, null, operations);
+    }
+
+    /**
+     * Handles {@link WeatherContract#METHOD_WRITE_FORECAST}: the forecast rows and the operations
+     * that come with them are written in one transaction, like applyBatch.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_GET_QUERY_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putLong(WeatherContract.EXTRA_CACHE_HITS, mQueryCache.getHitCount());
+            stats.putLong(WeatherContract.EXTRA_CACHE_MISSES, mQueryCache.getMissCount());
+            return stats;
+        }
+        if (!WeatherContract.METHOD_WRITE_FORECAST.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        WeatherBatch forecast = WeatherBatch.fromBundle(extras);
+        if (forecast == null) {
+            throw new IllegalArgumentException("No forecast to write");
+        }
+        ArrayList<ContentProviderOperation> operations =
+                extras.getParcelableArrayList(WeatherContract.EXTRA_OPERATIONS);
+        if (operations == null) {
+            operations = new ArrayList<ContentProviderOperation>();
+        }
+
+        int[] changedRows = new int[1];
+        HashSet<Long> changedLocationIds = new HashSet<Long>();
+        ContentProviderResult[] results;
+        try {
+            results = applyBatch(forecast, changedRows, changedLocationIds, operations);
+        } catch (OperationApplicationException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        long[] locationIds = new long[changedLocationIds.size()];
+        int i = 0;
+        for (Long locationId : changedLocationIds) {
+            locationIds[i++] = locationId;
+        }
+        Bundle written = new Bundle();
+        written.putInt(WeatherContract.EXTRA_CHANGED_ROWS, changedRows[0]);
+        written.putLongArray(WeatherContract.EXTRA_CHANGED_LOCATION_IDS, locationIds);
+        written.putParcelableArray(WeatherContract.EXTRA_OPERATION_RESULTS, results);
+        return written;
+    }
+
+    /**
+     * Applies the operations and writes the forecast rows, if any, all in one transaction.  The
+     * rows are written right after the last operation that inserts one of their locations, or
+     * before all the operations if there is none.  Change notifications are held back until it
+     * has been committed, and then sent once per changed URI.
+     *
+     * @param forecast rows to write, or null
+     * @param changedRows receives the number of forecast rows inserted or updated
+     * @param changedLocationIds receives the locations of those rows
+     */
+    private ContentProviderResult[] applyBatch(WeatherBatch forecast, int[] changedRows,
+                                               HashSet<Long> changedLocationIds,
+                                               ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        HashSet<Uri> changedUris = new HashSet<Uri>();
+        ContentProviderResult[] results;
+
+        // The forecast goes in once the locations it's filed under have been inserted, and
+        // before the rest of the operations, such as the purge of the days that are over
+        int forecastOperation = forecast == null ? -1 : forecast.getLastLocationOperation() + 1;
+
+        mBatchChangedUris.set(changedUris);
+        beginWriteTransaction(db);
+        try {
+            // Applied one by one, like ContentProvider.applyBatch does, so the forecast can go
+            // in between
+            results = new ContentProviderResult[operations.size()];
+            for (int i = 0; i <= operations.size(); i++) {
+                if (i == forecastOperation) {
+                    forecast.resolveLocationIds(results);
+                    changedRows[0] = writeWeather(db, forecast, changedLocationIds);
+                    if (changedRows[0] != 0) {
+                        notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                    }
+                }
+                if (i < operations.size()) {
+                    results[i] = operations.get(i).apply(this, results, i);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChangedUris.remove();
+        }
+
+        // Committed, so the cache can't pick up rows of the batch from before it any more
+        if (!changedUris.isEmpty()) {
+            mQueryCache.invalidate();
+        }
+        for (Uri uri : changedUris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Starts a transaction for writing.  With write-ahead logging the readers carry on with the
+     * last committed data while it runs, so there is no need to lock them out.
+     */
+    @TargetApi(11)
+    private static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * Tells observers that the data at the given URI changed, or holds the notification back
+     * until the end of the batch if called from within applyBatch.  Outside of a batch the change
+     * has been committed by now, so this is also where cached query results are dropped, before
+     * the observers come asking for fresh ones.
+     */
+    private void notifyChange(Uri uri) {
+        HashSet<Uri> batchChangedUris = mBatchChangedUris.get();
+        if (batchChangedUris != null) {
+            batchChangedUris.add(uri);
+        } else {
+            mQueryCache.invalidate();
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Writes weather rows, only touching the ones that actually differ from what is stored.
+     *
+     * @return the number of rows that were inserted or updated.  Rows that were identical to the
+     * stored ones are not counted, and observers are only notified if something changed.
+     */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                beginWriteTransaction(db);
+                int insertedCount = 0;
+                int updatedCount = 0;
+                int unchangedCount = 0;
+                long[] rowId = new long[1];
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                        switch (writeWeather(db, value, rowId)) {
+                            case WRITE_INSERTED:
+                                insertedCount++;
+                                break;
+                            case WRITE_UPDATED:
+                                updatedCount++;
+                                break;
+                            case WRITE_UNCHANGED:
+                                unchangedCount++;
+                                break;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                Log.d(LOG_TAG, "bulkInsert: " + insertedCount + " inserted, " + updatedCount +
+                        " updated, " + unchangedCount + " unchanged");
+                int returnCount = insertedCount + updatedCount;
+                if (returnCount != 0) {
+                    notifyChange(uri);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Writes a single weather row.  If there already is a row for the same location and date,
+     * only the columns whose values differ are updated, so the row keeps its _ID; identical rows
+     * aren't written at all.
+     *
+     * @param db the database to write to
+     * @param values the (normalized) weather values
+     * @param rowId receives the _ID of the row that now holds the values
+     * @return one of WRITE_INSERTED, WRITE_UPDATED, WRITE_UNCHANGED or WRITE_FAILED
+     */
+    private int writeWeather(SQLiteDatabase db, ContentValues values, long[] rowId) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+        if (locationId != null && date != null) {
+            Cursor existing = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    sLocationIdAndDaySelection,
+                    new String[]{Long.toString(locationId), Long.toString(date)},
+                    null,
+                    null,
+                    null);
+            try {
+                if (existing.moveToFirst()) {
+                    rowId[0] = existing.getLong(
+                            existing.getColumnIndex(WeatherContract.WeatherEntry._ID));
+                    ContentValues changedValues = getChangedValues(existing, values);
+                    if (changedValues.size() == 0) {
+                        return WRITE_UNCHANGED;
+                    }
+                    db.update(WeatherContract.WeatherEntry.TABLE_NAME, changedValues,
+                            WeatherContract.WeatherEntry._ID + " = ?",
+                            new String[]{Long.toString(rowId[0])});
+                    return WRITE_UPDATED;
+                }
+            } finally {
+                existing.close();
+            }
+        }
+
+        rowId[0] = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+        return rowId[0] > 0 ? WRITE_INSERTED : WRITE_FAILED;
+    }
+
+    /**
+     * Writes the rows of a batch through two compiled statements that are bound straight from
+     * its arrays: an UPDATE that only matches the stored row if one of its values differs, and
+     * if that didn't match, an INSERT that is ignored if the row exists.  So unchanged rows are
+     * not written, changed rows keep their _ID, and no ContentValues or SQL strings are built
+     * per row.  Must be called within a transaction.
+     *
+     * @param changedLocationIds receives the locations of the rows that were written
+     * @return the number of rows inserted or updated
+     */
+    @TargetApi(11)
+    private static int writeWeather(SQLiteDatabase db, WeatherBatch batch,
+                                    HashSet<Long> changedLocationIds) {
+        SQLiteStatement update = db.compileStatement(sUpdateChangedWeatherSql);
+        SQLiteStatement insert = db.compileStatement(sInsertNewWeatherSql);
+        Time time = new Time();
+        int changedRows = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.mShortDescs[i] == null) {
+                    // The description can't be null, and one bad row mustn't fail the whole
+                    // batch, so it's left out like a failed insert would be
+                    Log.w(LOG_TAG, "Skipping forecast row without a description");
+                    continue;
+                }
+                long date = WeatherContract.normalizeDate(batch.mDates[i], time);
+                bindWeather(update, batch, i, date);
+                boolean written = update.executeUpdateDelete() > 0;
+                if (!written) {
+                    bindWeather(insert, batch, i, date);
+                    written = insert.executeInsert() != -1;
+                }
+                if (written) {
+                    changedRows++;
+                    changedLocationIds.add(batch.mLocationIds[i]);
+                }
+            }
+        } finally {
+            update.close();
+            insert.close();
+        }
+        Log.d(LOG_TAG, "Forecast batch of " + batch.size() + " rows, " + changedRows + " written");
+        return changedRows;
+    }
+
+    private static void bindWeather(SQLiteStatement statement, WeatherBatch batch, int i,
+                                    long date) {
+        // The order has to match sWeatherColumnParameters
+        statement.bindString(1, batch.mShortDescs[i]);
+        statement.bindLong(2, batch.mWeatherIds[i]);
+        statement.bindDouble(3, batch.mMinTemps[i]);
+        statement.bindDouble(4, batch.mMaxTemps[i]);
+        statement.bindDouble(5, batch.mHumidities[i]);
+        statement.bindDouble(6, batch.mPressures[i]);
+        statement.bindDouble(7, batch.mWindSpeeds[i]);
+        statement.bindDouble(8, batch.mDegrees[i]);
+        statement.bindLong(9, batch.mLocationIds[i]);
+        statement.bindLong(10, date);
+    }
+
+    /**
+     * Compares the values with the row the cursor is positioned on.
+     *
+     * @return the subset of values that differ from the stored row, empty if there are none.
+     */
+    private static ContentValues getChangedValues(Cursor stored, ContentValues values) {
+        ContentValues changedValues = new ContentValues();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            String column = entry.getKey();
+            if (WeatherContract.WeatherEntry._ID.equals(column)) {
+                continue;
+            }
+            int index = stored.getColumnIndex(column);
+            Object value = entry.getValue();
+            boolean same;
+            if (index == -1) {
+                // Let SQLite complain about unknown columns
+                same = false;
+            } else if (value == null) {
+                same = stored.isNull(index);
+            } else if (stored.isNull(index)) {
+                same = false;
+            } else if (value instanceof Double || value instanceof Float) {
+                same = stored.getDouble(index) == ((Number) value).doubleValue();
+            } else if (value instanceof Number) {
+                // Integral values may still end up in a REAL column (e.g. humidity)
+                same = stored.getDouble(index) == ((Number) value).doubleValue();
+            } else {
+                same = value.toString().equals(stored.getString(index));
+            }
+            if (!same) {
+                putValue(changedValues, column, value);
+            }
+        }
+        return changedValues;
+    }
+
+    private static void putValue(ContentValues values, String column, Object value) {
+        if (value == null) {
+            values.putNull(column);
+        } else if (value instanceof Double) {
+            values.put(column, (Double) value);
+        } else if (value instanceof Float) {
+            values.put(column, (Float) value);
+        } else if (value instanceof Long) {
+            values.put(column, (Long) value);
+        } else if (value instanceof Integer) {
+            values.put(column, (Integer) value);
+        } else if (value instanceof Short) {
+            values.put(column, (Short) value);
+        } else if (value instanceof Byte) {
+            values.put(column, (Byte) value);
+        } else if (value instanceof Boolean) {
+            values.put(column, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            values.put(column, (byte[]) value);
+        } else {
+            values.put(column, value.toString());
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The condition images Muzei shows, downloaded once and kept on disk at the size of the screen.
+ *
+ * The images are photos several times the size of any screen, and there are only a handful of
+ * them, so each is downloaded the first time its condition comes up, scaled down to just cover
+ * the screen, and served from here from then on.  Files are named by a hash of what's in them;
+ * an index maps each image URL and screen size to its file.  The directory is capped at
+ * {@link #MAX_BYTES}, the least recently used files going first.
+ *
+ * How often the cache saves a download, and how many bytes it saved, is logged and kept across
+ * restarts.  Downloading blocks, so only call {@link #get(Context, String)} off the main thread.
+ */
+public class MuzeiArtCache {
+    private static final String LOG_TAG = MuzeiArtCache.class.getSimpleName();
+
+    static final String DIRECTORY = "muzei_artwork";
+
+    // Room for every condition at the size of a large tablet's screen
+    static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final String PREFS_NAME = "muzei_artwork";
+    private static final String KEY_INDEX_PREFIX = "file_";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+    private static final String KEY_BYTES_SAVED = "bytes_saved";
+
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final String FILE_EXTENSION = ".jpg";
+    private static final int JPEG_QUALITY = 90;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the image at the URL scaled to the screen, downloading it if it isn't cached, or
+     * null if it couldn't be downloaded
+     */
+    public static synchronized File get(Context context, String url) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int shortSide = Math.min(metrics.widthPixels, metrics.heightPixels);
+        int longSide = Math.max(metrics.widthPixels, metrics.heightPixels);
+        String key = url + "@" + shortSide + "x" + longSide;
+
+        File file = getCached(context, key);
+        if (file != null) {
+            return file;
+        }
+        recordMiss(context);
+        byte[] original = download(url);
+        if (original == null) {
+            return null;
+        }
+        byte[] scaled = scale(original, shortSide, longSide);
+        if (scaled == null) {
+            Log.e(LOG_TAG, "Couldn't decode the image at " + url);
+            return null;
+        }
+        return store(context, key, scaled, original.length);
+    }
+
+    /**
+     * @return the file the key maps to, or null if there's none or it was evicted.  A hit counts
+     * towards the cache's stats.
+     */
+    static synchronized File getCached(Context context, String key) {
+        SharedPreferences prefs = getPrefs(context);
+        String entry = prefs.getString(KEY_INDEX_PREFIX + key, null);
+        if (entry == null) {
+            return null;
+        }
+        // The entry is the file's name and how big the image it saves downloading is
+        int separator = entry.indexOf(',');
+        File file = getFile(context, entry.substring(0, separator));
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        // Keeps the file from being evicted ahead of ones that haven't been used for longer
+        file.setLastModified(System.currentTimeMillis());
+
+        long downloadBytes = Long.parseLong(entry.substring(separator + 1));
+        long hits = prefs.getLong(KEY_HITS, 0) + 1;
+        long bytesSaved = prefs.getLong(KEY_BYTES_SAVED, 0) + downloadBytes;
+        prefs.edit()
+                .putLong(KEY_HITS, hits)
+                .putLong(KEY_BYTES_SAVED, bytesSaved)
+                .apply();
+        logStats(hits, prefs.getLong(KEY_MISSES, 0), bytesSaved);
+        return file;
+    }
+
+    /**
+     * Writes an image to the cache under the hash of its bytes, unless a file with the same
+     * image is there already, and evicts what no longer fits.
+     *
+     * @param downloadBytes the size of the image as it was downloaded
+     * @return the image's file, or null if it couldn't be written
+     */
+    static synchronized File store(Context context, String key, byte[] image,
+                                   long downloadBytes) {
+        String name;
+        try {
+            name = toHexString(MessageDigest.getInstance(HASH_ALGORITHM).digest(image)) +
+                    FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1, so this really shouldn't happen
+            Log.e(LOG_TAG, "Error ", e);
+            return null;
+        }
+        File file = getFile(context, name);
+        if (!file.exists()) {
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(LOG_TAG, "Couldn't create " + directory);
+                return null;
+            }
+            // Written to the side and renamed, so a half written file is never served
+            File temp = new File(directory, name + ".tmp");
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(temp);
+                out.write(image);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error writing " + file, e);
+                temp.delete();
+                return null;
+            } finally {
+                closeQuietly(out);
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return null;
+            }
+        }
+        file.setLastModified(System.currentTimeMillis());
+        getPrefs(context).edit()
+                .putString(KEY_INDEX_PREFIX + key, name + "," + downloadBytes)
+                .apply();
+        trim(context, MAX_BYTES);
+        return file;
+    }
+
+    /**
+     * Deletes the least recently used files until the rest fit in maxBytes.  The most recent
+     * file is always kept, whatever its size.
+     */
+    static synchronized void trim(Context context, long maxBytes) {
+        File[] files = new File(context.getFilesDir(), DIRECTORY).listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        // Index entries of evicted files are dropped when they're next looked up
+        for (int i = 0; i < files.length - 1 && total > maxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+                Log.d(LOG_TAG, "Evicted " + files[i].getName());
+            }
+        }
+    }
+
+    /**
+     * @return the cached file with the name, or null if the name isn't one the cache would give
+     * a file, so a name from outside can't reach any other file
+     */
+    static File getFile(Context context, String name) {
+        if (name == null || !name.matches("[0-9a-f]+\\" + FILE_EXTENSION)) {
+            return null;
+        }
+        return new File(new File(context.getFilesDir(), DIRECTORY), name);
+    }
+
+    /**
+     * @return how many times an image was served from the cache
+     */
+    public static long getHitCount(Context context) {
+        return getPrefs(context).getLong(KEY_HITS, 0);
+    }
+
+    /**
+     * @return how many times an image had to be downloaded
+     */
+    public static long getMissCount(Context context) {
+        return getPrefs(context).getLong(KEY_MISSES, 0);
+    }
+
+    /**
+     * @return the bytes the hits didn't have to download
+     */
+    public static long getBytesSaved(Context context) {
+        return getPrefs(context).getLong(KEY_BYTES_SAVED, 0);
+    }
+
+    private static void recordMiss(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        long misses = prefs.getLong(KEY_MISSES, 0) + 1;
+        prefs.edit().putLong(KEY_MISSES, misses).apply();
+        logStats(prefs.getLong(KEY_HITS, 0), misses, prefs.getLong(KEY_BYTES_SAVED, 0));
+    }
+
+    private static void logStats(long hits, long misses, long bytesSaved) {
+        Log.d(LOG_TAG, "Artwork cache: " + hits + " hits, " + misses + " misses (" +
+                (100 * hits / (hits + misses)) + "% hit rate), " + bytesSaved + " bytes saved");
+    }
+
+    private static byte[] download(String url) {
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(url).openConnection();
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error " + urlConnection.getResponseCode() + " downloading " +
+                        url);
+                return null;
+            }
+            InputStream in = urlConnection.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error downloading " + url, e);
+            return null;
+        } finally {
+            if (urlConnection != null) {
+                // Closing the connection also closes the stream we were reading from
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Scales an image down to just cover a screen of the given size in either orientation,
+     * which is all Muzei shows of it.
+     *
+     * @return the image as a JPEG, or null if it couldn't be decoded
+     */
+    static byte[] scale(byte[] image, int shortSide, int longSide) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int imageShortSide = Math.min(options.outWidth, options.outHeight);
+        int imageLongSide = Math.max(options.outWidth, options.outHeight);
+
+        // Decoding at a fraction of the size is much cheaper than decoding it all and scaling
+        int sampleSize = 1;
+        while (imageShortSide / (sampleSize * 2) >= shortSide &&
+                imageLongSide / (sampleSize * 2) >= longSide) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        float scale = Math.max(shortSide / (float) Math.min(bitmap.getWidth(), bitmap.getHeight()),
+                longSide / (float) Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private static String toHexString(byte[] bytes) {
+        final char[] hexDigits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = hexDigits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = hexDigits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing stream", e);
+        }
+    }
+}
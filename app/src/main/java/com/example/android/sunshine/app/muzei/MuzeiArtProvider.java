@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Hands the images in {@link MuzeiArtCache} to Muzei, which runs in its own process and can't
+ * read our files directly.  It's read only, and only serves files the cache named.
+ */
+public class MuzeiArtProvider extends ContentProvider {
+
+    public static final String CONTENT_AUTHORITY =
+            "com.example.android.sunshine.app.muzei.artwork";
+
+    /**
+     * @return the uri Muzei can open a cached image with
+     */
+    public static Uri buildArtworkUri(File file) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(CONTENT_AUTHORITY)
+                .appendPath(file.getName())
+                .build();
+    }
+
+    /**
+     * @return whether the uri is one of ours
+     */
+    public static boolean isArtworkUri(Uri uri) {
+        return uri != null && CONTENT_AUTHORITY.equals(uri.getAuthority());
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Artwork is read only: " + uri);
+        }
+        File file = MuzeiArtCache.getFile(getContext(), uri.getLastPathSegment());
+        if (file == null || !file.exists()) {
+            throw new FileNotFoundException("No artwork at " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+}
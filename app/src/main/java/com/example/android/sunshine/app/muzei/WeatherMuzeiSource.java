@@ -16,28 +16,25 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.WeatherSnapshot;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.File;
+
 /**
- * Muzei source that changes your background based on the current weather conditions
+ * Muzei source that changes your background based on the current weather conditions.
+ *
+ * The images are served from {@link MuzeiArtCache}, and new artwork is only published when
+ * today's condition moves to another category, or its description or location changes.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -54,26 +51,44 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
 
     @Override
     protected void onUpdate(int reason) {
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        WeatherSnapshot snapshot = WeatherSnapshot.get(this);
+        if (snapshot.getDayCount() > 0) {
+            int weatherId = snapshot.getWeatherId(0);
+            String desc = snapshot.getShortDesc(0);
 
+            // There's one image per category of condition, so its URL names the category
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+            if (imageUrl == null) {
+                return;
             }
+            String location = snapshot.getLocationSetting();
+            // Muzei is only told about a new wallpaper when the category, or what's said about
+            // it, changes, not every time the forecast is refreshed
+            Artwork current = getCurrentArtwork();
+            boolean sameImage = current != null && imageUrl.equals(current.getToken()) &&
+                    MuzeiArtProvider.isArtworkUri(current.getImageUri());
+            if (sameImage && TextUtils.equals(desc, current.getTitle()) &&
+                    TextUtils.equals(location, current.getByline())) {
+                return;
+            }
+
+            // When only the title or byline changed, the image is a cache hit, and goes out
+            // under the same uri
+            File file = MuzeiArtCache.get(this, imageUrl);
+            // Should the image not download, Muzei can still try, and we'll try again the next
+            // time the forecast is refreshed
+            Uri imageUri = file != null
+                    ? MuzeiArtProvider.buildArtworkUri(file)
+                    : Uri.parse(imageUrl);
+            publishArtwork(new Artwork.Builder()
+                    .imageUri(imageUri)
+                    .token(imageUrl)
+                    .title(desc)
+                    .byline(location)
+                    .viewIntent(new Intent(this, MainActivity.class))
+                    .build());
+            snapshot.recordDelivery("Muzei");
         }
-        cursor.close();
     }
 }
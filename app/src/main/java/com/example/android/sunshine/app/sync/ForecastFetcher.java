@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.Debug;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherBatch;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads and parses the forecast of a single location.
+ *
+ * Fetchers run on the sync adapter's worker threads, several at a time.  They only talk to the
+ * network; writing the results is left to the sync adapter, so that every location of a sync
+ * can be committed in one batch.
+ */
+class ForecastFetcher implements Callable<ForecastFetcher.Result> {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+
+    /**
+     * What the database knows about a location we keep a forecast for.
+     */
+    static class TrackedLocation {
+        final String locationSetting;
+        // -1 if the location isn't in the database yet
+        final long locationId;
+        // The validators and hash of the last forecast we accepted, if any
+        final String eTag;
+        final String lastModified;
+        final String contentHash;
+
+        TrackedLocation(String locationSetting, long locationId, String eTag,
+                        String lastModified, String contentHash) {
+            this.locationSetting = locationSetting;
+            this.locationId = locationId;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+
+    /**
+     * The outcome of fetching the forecast of one location.
+     */
+    static class Result {
+        final TrackedLocation location;
+        @SunshineSyncAdapter.LocationStatus int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        // Set when the server, or the hash of the parsed forecast, says nothing changed since the
+        // last sync
+        boolean unchanged;
+
+        String eTag;
+        String lastModified;
+        String contentHash;
+
+        String cityName;
+        double lat;
+        double lon;
+        // The rows aren't filed under a location yet, the sync adapter does that
+        final WeatherBatch forecast = new WeatherBatch(14);
+
+        Result(TrackedLocation location) {
+            this.location = location;
+        }
+    }
+
+    private final Uri mUri;
+    private final TrackedLocation mLocation;
+    private final int mJulianStartDay;
+    private final Semaphore mHostPermits;
+
+    /**
+     * @param uri the OpenWeatherMap request for the location
+     * @param location the location being fetched
+     * @param julianStartDay the local day the forecast starts at
+     * @param hostPermits limits how many requests go to the host of the uri at the same time
+     */
+    ForecastFetcher(Uri uri, TrackedLocation location, int julianStartDay,
+                    Semaphore hostPermits) {
+        mUri = uri;
+        mLocation = location;
+        mJulianStartDay = julianStartDay;
+        mHostPermits = hostPermits;
+    }
+
+    @Override
+    public Result call() throws InterruptedException {
+        Result result = new Result(mLocation);
+
+        mHostPermits.acquire();
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        try {
+            // Send back whatever validators we got with the last forecast we accepted, so the
+            // server can tell us nothing changed instead of sending the whole forecast again.
+            URL url = new URL(mUri.toString());
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            if (mLocation.eTag != null) {
+                urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, mLocation.eTag);
+            }
+            if (mLocation.lastModified != null) {
+                urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, mLocation.lastModified);
+            }
+            urlConnection.connect();
+
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we have is still current: no parsing, no writes, and nobody to tell.
+                Log.d(LOG_TAG, mLocation.locationSetting + ": forecast not modified");
+                result.unchanged = true;
+                result.eTag = mLocation.eTag;
+                result.lastModified = mLocation.lastModified;
+                result.contentHash = mLocation.contentHash;
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return result;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                return result;
+            }
+            result.eTag = urlConnection.getHeaderField(HEADER_ETAG);
+            result.lastModified = urlConnection.getHeaderField(HEADER_LAST_MODIFIED);
+
+            // The forecast is parsed straight off the connection, so an empty stream shows up
+            // as an EOFException and is reported as the server being down, same as before.
+            readForecast(new BufferedInputStream(inputStream), result);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1, so this really shouldn't happen
+            Log.e(LOG_TAG, "Error ", e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException | IllegalStateException | NumberFormatException e) {
+            // JsonReader reports malformed or unexpected documents with unchecked exceptions
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                // Closing the connection also closes the stream we were reading from
+                urlConnection.disconnect();
+            }
+            mHostPermits.release();
+        }
+        return result;
+    }
+
+    /**
+     * Read the forecast in JSON Format from the response stream and pull out the data we need
+     * to construct the rows for the weather table.
+     *
+     * The stream is parsed token by token by {@link ForecastJsonParser}, so each day goes
+     * straight into a WeatherBatch for the provider without the whole response or a JSONObject
+     * tree ever being held in memory.
+     */
+    void readForecast(InputStream forecastStream, final Result result)
+            throws IOException, JSONException, NoSuchAlgorithmException {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        // now we work exclusively in UTC
+        final Time utcTime = new Time();
+        // Days are stored with a description, so a day without one makes the forecast invalid
+        final boolean[] missingDescription = new boolean[1];
+
+        // Keep track of how much garbage the parser produces.  The sync adapter only turns
+        // allocation counting on in debug builds, the counts are per thread.
+        if (BuildConfig.DEBUG) {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+        }
+        int messageCode = ForecastJsonParser.parse(forecastStream, new ForecastJsonParser.Callback() {
+            @Override
+            public void onCity(String cityName, double lat, double lon) {
+                result.cityName = cityName;
+                result.lat = lat;
+                result.lon = lon;
+            }
+
+            @Override
+            public void onDay(int dayIndex, double pressure, int humidity, double windSpeed,
+                              double windDirection, double high, double low,
+                              String description, int weatherId) {
+                if (description == null) {
+                    missingDescription[0] = true;
+                    return;
+                }
+                // Cheating to convert this to UTC time, which is what we want anyhow
+                long dateTime = utcTime.setJulianDay(mJulianStartDay + dayIndex);
+
+                result.forecast.add(-1, dateTime, weatherId, description, low, high,
+                        humidity, pressure, windSpeed, windDirection);
+            }
+        });
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Forecast parse allocated " + Debug.getThreadAllocCount() +
+                    " objects (" + Debug.getThreadAllocSize() + " bytes) for " +
+                    result.forecast.size() + " days");
+        }
+
+        // do we have an error?
+        switch (messageCode) {
+            case HttpURLConnection.HTTP_OK:
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                return;
+            default:
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                return;
+        }
+
+        if (result.cityName == null) {
+            // A successful response always describes the city we asked for
+            throw new JSONException("Forecast response is missing the city");
+        }
+        if (missingDescription[0]) {
+            throw new JSONException("Forecast response has a day without a description");
+        }
+
+        result.contentHash = hashForecast(result);
+        // Same forecast as last time?
+        result.unchanged = result.contentHash.equals(mLocation.contentHash);
+        result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+    }
+
+    /**
+     * Hashes what was parsed rather than the body itself, which also carries a "message" field
+     * that changes from call to call, so two bodies with the same forecast hash the same.
+     */
+    private static String hashForecast(Result result) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        digest.update(result.cityName.getBytes(Charset.forName("UTF-8")));
+        ByteBuffer coordinates = ByteBuffer.allocate(2 * 8);
+        coordinates.putDouble(result.lat).putDouble(result.lon);
+        digest.update(coordinates.array());
+        result.forecast.updateDigest(digest);
+        return toHexString(digest.digest());
+    }
+
+    private static String toHexString(byte[] bytes) {
+        final char[] hexDigits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = hexDigits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = hexDigits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pulls the forecast out of an OpenWeatherMap daily forecast response as it comes off the wire.
+ *
+ * Instead of reading the whole body into a String and building a JSONObject tree from it, the
+ * parser walks the tokens of the stream and hands every day to a {@link Callback} as soon as it
+ * has been read, so at no point is the full response (or a DOM of it) held in memory.
+ */
+public class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Receives the pieces of the forecast in the order they appear in the response.
+     */
+    public interface Callback {
+        void onCity(String cityName, double lat, double lon);
+
+        void onDay(int dayIndex, double pressure, int humidity, double windSpeed,
+                   double windDirection, double high, double low,
+                   String description, int weatherId);
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Parses the forecast contained in the given stream.  The stream is not closed.
+     *
+     * @param in the body of the OpenWeatherMap response
+     * @param callback receives the city and each day of the forecast
+     * @return the message code reported by the server, or HTTP_OK if it didn't report one
+     */
+    public static int parse(InputStream in, Callback callback) throws IOException, JSONException {
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        // JsonReader only arrived in Honeycomb, so older devices still go through a JSONObject
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return parseStream(reader, callback);
+        } else {
+            return parseLegacy(reader, callback);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int parseStream(Reader in, Callback callback) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        int messageCode = HttpURLConnection.HTTP_OK;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // "cod" is sometimes sent as a String, which nextInt() copes with
+                messageCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader, callback);
+            } else if (OWM_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                int dayIndex = 0;
+                while (reader.hasNext()) {
+                    readDay(reader, dayIndex++, callback);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return messageCode;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Callback callback) throws IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        callback.onCity(cityName, lat, lon);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDay(JsonReader reader, int dayIndex, Callback callback)
+            throws IOException {
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        double high = 0;
+        double low = 0;
+        String description = null;
+        int weatherId = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                // Humidity is documented as a whole percentage, but don't choke on decimals
+                humidity = (int) reader.nextDouble();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(tempName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        callback.onDay(dayIndex, pressure, humidity, windSpeed, windDirection, high, low,
+                description, weatherId);
+    }
+
+    private static int parseLegacy(Reader in, Callback callback)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(in);
+        StringBuilder buffer = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line).append('\n');
+        }
+
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        int messageCode = forecastJson.optInt(OWM_MESSAGE_CODE, HttpURLConnection.HTTP_OK);
+        if (messageCode != HttpURLConnection.HTTP_OK) {
+            return messageCode;
+        }
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        callback.onCity(cityJson.getString(OWM_CITY_NAME),
+                cityCoord.getDouble(OWM_LATITUDE), cityCoord.getDouble(OWM_LONGITUDE));
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            callback.onDay(i,
+                    dayForecast.getDouble(OWM_PRESSURE),
+                    dayForecast.getInt(OWM_HUMIDITY),
+                    dayForecast.getDouble(OWM_WINDSPEED),
+                    dayForecast.getDouble(OWM_WIND_DIRECTION),
+                    temperatureObject.getDouble(OWM_MAX),
+                    temperatureObject.getDouble(OWM_MIN),
+                    weatherObject.getString(OWM_DESCRIPTION),
+                    weatherObject.getInt(OWM_WEATHER_ID));
+        }
+        return messageCode;
+    }
+}
@@ -3,15 +3,18 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,10 +25,14 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.Parcelable;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
+import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 
@@ -35,7 +42,10 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.widget.WidgetArtCache;
+import com.example.android.sunshine.app.widget.WidgetLocations;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
@@ -43,21 +53,18 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
-import java.util.Vector;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -71,18 +78,29 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    private static final String[] TRACKED_LOCATION_PROJECTION = new String[] {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_ETAG,
+            WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED,
+            WeatherContract.LocationEntry.COLUMN_CONTENT_HASH
     };
 
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+    private static final int INDEX_COORD_LAT = 2;
+    private static final int INDEX_COORD_LONG = 3;
+    private static final int INDEX_ETAG = 4;
+    private static final int INDEX_LAST_MODIFIED = 5;
+    private static final int INDEX_CONTENT_HASH = 6;
+
+    // Every tracked location is fetched on a small pool of worker threads.  The weather service
+    // never sees more than MAX_REQUESTS_PER_HOST of our requests at the same time.
+    private static final int MAX_FETCH_THREADS = 6;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
 
     public static final String WEATHER_PATH = "/weather";
     private static final String WEATHER_DETAIL_PATH = "/weather-info";
@@ -117,122 +135,102 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
 
-        // We no longer need just the location String, but also potentially the latitude and
-        // longitude, in case we are syncing based on a new Place Picker API result.
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        String preferredLocation = Utility.getPreferredLocation(getContext());
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        // Refresh every location we keep a forecast for, not just the one on screen
+        List<ForecastFetcher> fetchers = getForecastFetchers(preferredLocation, julianStartDay);
+        List<ForecastFetcher.Result> results = new ArrayList<ForecastFetcher.Result>(fetchers.size());
 
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(MAX_FETCH_THREADS, fetchers.size())));
+        // Allocation counting slows the runtime down, so only do it in debug builds
+        if (BuildConfig.DEBUG) {
+            Debug.startAllocCounting();
+        }
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
-            }
-
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
+            // The locations are fetched side by side, so the sync takes as long as the slowest
+            // one instead of all of them added up
+            for (Future<ForecastFetcher.Result> future : executor.invokeAll(fetchers)) {
                 try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error ", e.getCause());
                 }
             }
+        } catch (InterruptedException e) {
+            // The sync got cancelled, don't write half of it
+            Log.d(LOG_TAG, "Sync cancelled");
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            executor.shutdownNow();
+            if (BuildConfig.DEBUG) {
+                Debug.stopAllocCounting();
+            }
         }
-        return;
+
+        writeForecasts(results, preferredLocation, julianStartDay);
     }
 
+    /**
+     * Builds the OpenWeatherMap request for a location.
+     *
+     * @param locationQuery The location string used to request updates from the server.
+     * @param latitude the latitude to ask for instead of the location string, or null
+     * @param longitude the longitude to ask for instead of the location string, or null
+     */
+    private static Uri buildForecastUri(String locationQuery, String latitude, String longitude) {
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String FORECAST_BASE_URL =
+                "http://api.openweathermap.org/data/2.5/forecast/daily?";
+        final String QUERY_PARAM = "q";
+        final String LAT_PARAM = "lat";
+        final String LON_PARAM = "lon";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+
+        if (latitude != null && longitude != null) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                    .appendQueryParameter(LON_PARAM, longitude);
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+
+        return uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+    }
 
-    public void sendDataToDevice(double high, double low, int weatherId) {
+    /**
+     * Pushes today's forecast from the snapshot to the watch.
+     */
+    public void sendDataToDevice(final WeatherSnapshot snapshot) {
         Log.d(LOG_TAG, "Sending Weather data");
 
-        if (googleApiClient == null) {
+        if (googleApiClient == null || snapshot.getDayCount() == 0) {
             return;
         }
+        double high = snapshot.getMaxTemp(0);
+        double low = snapshot.getMinTemp(0);
+        int weatherId = snapshot.getWeatherId(0);
 
         googleApiClient.connect();
 
@@ -255,188 +253,143 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             Log.d(LOG_TAG, "Failed to send weather data");
                         } else {
                             Log.d(LOG_TAG, "Successfully sent weather data");
+                            snapshot.recordDelivery("Wear");
                         }
                     }
                 });
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Commits the forecasts fetched for all the locations of a sync in one go, so they are
+     * written in a single transaction and observers only hear about it once.  The provider only
+     * writes the days that actually changed, and only if something changed are the widgets,
+     * Muzei, notification and wear updated.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @param results the outcome of fetching each location
+     * @param preferredLocation the location whose status is shown in the UI
+     * @param julianStartDay the local day the forecasts start at
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void writeForecasts(List<ForecastFetcher.Result> results, String preferredLocation,
+                                int julianStartDay) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        WeatherBatch forecast = new WeatherBatch(results.size() * 14);
+        ForecastFetcher.Result preferredResult = null;
+        long preferredLocationId = -1;
+
+        for (ForecastFetcher.Result result : results) {
+            long locationId = -1;
+            if (result.status == LOCATION_STATUS_OK) {
+                locationId = addForecast(operations, forecast, result);
             }
+            if (result.location.locationSetting.equals(preferredLocation)) {
+                preferredResult = result;
+                preferredLocationId = locationId;
+            }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+        int purgeOperation = -1;
+        if (forecast.size() > 0) {
+            // delete old data so we don't build up an endless history
+            final Time utcTime = new Time();
+            purgeOperation = operations.size();
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[]{Long.toString(utcTime.setJulianDay(julianStartDay - 1))})
+                    .build());
+        }
 
-                if (i == 0) {
-                    sendDataToDevice(high, low, weatherId);
+        int changedRows = 0;
+        int purgedRows = 0;
+        boolean preferredChanged = false;
+        if (!operations.isEmpty()) {
+            try {
+                // The validators are written along with the forecast, so they are only
+                // remembered once it is safely in the database
+                ContentProviderResult[] batchResults;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    Bundle extras = forecast.toBundle();
+                    extras.putParcelableArrayList(WeatherContract.EXTRA_OPERATIONS, operations);
+                    Bundle written = getContext().getContentResolver().call(
+                            WeatherContract.WeatherEntry.CONTENT_URI,
+                            WeatherContract.METHOD_WRITE_FORECAST, null, extras);
+                    changedRows = written.getInt(WeatherContract.EXTRA_CHANGED_ROWS);
+                    // A new location has no stored days, so whatever came for it is a change
+                    preferredChanged = preferredResult != null &&
+                            preferredResult.status == LOCATION_STATUS_OK &&
+                            preferredLocationId == -1 && preferredResult.forecast.size() > 0;
+                    for (long locationId :
+                            written.getLongArray(WeatherContract.EXTRA_CHANGED_LOCATION_IDS)) {
+                        preferredChanged |= locationId == preferredLocationId;
+                    }
+                    Parcelable[] operationResults =
+                            written.getParcelableArray(WeatherContract.EXTRA_OPERATION_RESULTS);
+                    batchResults = new ContentProviderResult[operationResults.length];
+                    System.arraycopy(operationResults, 0, batchResults, 0, operationResults.length);
+                } else {
+                    // Without ContentProvider.call() the days go in as ordinary inserts.  The
+                    // provider still skips the unchanged ones, but can't tell us which they were.
+                    for (int i = 0; i < forecast.size(); i++) {
+                        ContentProviderOperation.Builder insert = ContentProviderOperation
+                                .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                                .withValues(forecast.getContentValues(i));
+                        if (forecast.getLocationOperation(i) != -1) {
+                            insert.withValueBackReference(
+                                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                                    forecast.getLocationOperation(i));
+                        }
+                        operations.add(insert.build());
+                    }
+                    batchResults = getContext().getContentResolver().applyBatch(
+                            WeatherContract.CONTENT_AUTHORITY, operations);
+                    changedRows = forecast.size();
+                    preferredChanged = preferredResult != null &&
+                            preferredResult.status == LOCATION_STATUS_OK && !preferredResult.unchanged;
                 }
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                if (purgeOperation != -1) {
+                    purgedRows = batchResults[purgeOperation].count;
+                }
+            } catch (RemoteException | OperationApplicationException | IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Error writing the forecast", e);
+                setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+                return;
             }
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        if (changedRows + purgedRows > 0 || preferredChanged) {
+            fanOut(preferredLocation, preferredChanged);
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        Log.d(LOG_TAG, "Sync Complete. " + results.size() + " Locations, " + forecast.size() +
+                " Received, " + changedRows + " Changed, " + purgedRows + " Purged");
+        if (preferredResult != null) {
+            setLocationStatus(getContext(), preferredResult.status);
+        }
+    }
+
+    /**
+     * Tells everything that shows the forecast outside of the app about the new one.  They all
+     * show the preferred location from today on, so that is read once, now that the forecast is
+     * committed, and the same snapshot goes to every one of them.  How long each takes to get it
+     * on screen is logged by {@link WeatherSnapshot#recordDelivery(String)}.
+     *
+     * @param preferredLocation the location shown in the UI
+     * @param preferredChanged whether the forecast of that location changed, rather than only
+     *                         that of other locations, or the history
+     */
+    private void fanOut(String preferredLocation, boolean preferredChanged) {
+        WeatherSnapshot snapshot = WeatherSnapshot.read(getContext(), preferredLocation);
+        WeatherSnapshot.publish(snapshot);
+
+        // Both kinds of widgets pick the snapshot up through the broadcast, and the detail
+        // widget's art is loaded first, while we're off the main thread anyway
+        WidgetArtCache.prewarm(getContext(), snapshot);
+        updateWidgets();
+        if (preferredChanged) {
+            sendDataToDevice(snapshot);
+            updateMuzei();
+            notifyWeather(snapshot);
         }
     }
 
@@ -458,7 +411,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(WeatherSnapshot snapshot) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -473,18 +426,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (snapshot.getDayCount() > 0) {
+                    int weatherId = snapshot.getWeatherId(0);
+                    double high = snapshot.getMaxTemp(0);
+                    double low = snapshot.getMinTemp(0);
+                    String desc = snapshot.getShortDesc(0);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -554,65 +500,163 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+                    snapshot.recordDelivery("Notification");
 
                     //refreshing last sync
                     SharedPreferences.Editor editor = prefs.edit();
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Adds what needs to be written for the forecast of one location: the validators of the
+     * forecast go into the operations, the days into the forecast batch.
      *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the location, or -1 if it's new and will only get one in the write
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    private long addForecast(ArrayList<ContentProviderOperation> operations,
+                             WeatherBatch forecast, ForecastFetcher.Result result) {
+        ForecastFetcher.TrackedLocation location = result.location;
+        long locationId = location.locationId;
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_ETAG, result.eTag);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED, result.lastModified);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CONTENT_HASH, result.contentHash);
+
+        if (result.unchanged) {
+            // Same forecast as last time.  Only hang on to fresher validators, if we got any.
+            if (!TextUtils.equals(result.eTag, location.eTag) ||
+                    !TextUtils.equals(result.lastModified, location.lastModified)) {
+                operations.add(ContentProviderOperation
+                        .newUpdate(WeatherContract.LocationEntry.CONTENT_URI)
+                        .withSelection(WeatherContract.LocationEntry._ID + " = ?",
+                                new String[]{Long.toString(locationId)})
+                        .withValues(locationValues)
+                        .build());
+            }
+            return locationId;
+        }
 
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
+        if (locationId == -1) {
+            // A new location goes in with the rest of the write, validators and all, and its
+            // days get its id from the insert
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    location.locationSetting);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, result.cityName);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, result.lat);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, result.lon);
+            forecast.addAllForNewLocation(result.forecast, operations.size());
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                    .withValues(locationValues)
+                    .build());
+            return -1;
+        }
+        operations.add(ContentProviderOperation
+                .newUpdate(WeatherContract.LocationEntry.CONTENT_URI)
+                .withSelection(WeatherContract.LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(locationId)})
+                .withValues(locationValues)
+                .build());
+        forecast.addAll(result.forecast, locationId);
+        return locationId;
+    }
+
+    /**
+     * Helper method to set up a fetcher for every location we keep a forecast for.  The
+     * preferred location is always included, even if it isn't in the database yet.
+     *
+     * @param preferredLocation The location string of the location shown in the UI.
+     * @param julianStartDay the local day the forecasts start at
+     */
+    private List<ForecastFetcher> getForecastFetchers(String preferredLocation, int julianStartDay) {
+        Context context = getContext();
+        List<ForecastFetcher> fetchers = new ArrayList<ForecastFetcher>();
+        // Each host gets its own budget of concurrent requests
+        HashMap<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+        HashSet<String> trackedLocations = new HashSet<String>();
+
+        Cursor locationCursor = context.getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
+                TRACKED_LOCATION_PROJECTION,
+                null,
+                null,
                 null);
+        if (locationCursor != null) {
+            try {
+                while (locationCursor.moveToNext()) {
+                    String locationSetting = locationCursor.getString(INDEX_LOCATION_SETTING);
+                    trackedLocations.add(locationSetting);
+                    ForecastFetcher.TrackedLocation location = new ForecastFetcher.TrackedLocation(
+                            locationSetting,
+                            locationCursor.getLong(INDEX_LOCATION_ID),
+                            locationCursor.getString(INDEX_ETAG),
+                            locationCursor.getString(INDEX_LAST_MODIFIED),
+                            locationCursor.getString(INDEX_CONTENT_HASH));
+
+                    Uri forecastUri;
+                    if (locationSetting.equals(preferredLocation)) {
+                        forecastUri = buildPreferredForecastUri(context, preferredLocation);
+                    } else {
+                        // These coordinates came from the weather service itself, so they are
+                        // the surest way of asking it about the same city again
+                        forecastUri = buildForecastUri(locationSetting,
+                                locationCursor.getString(INDEX_COORD_LAT),
+                                locationCursor.getString(INDEX_COORD_LONG));
+                    }
+                    fetchers.add(new ForecastFetcher(forecastUri, location, julianStartDay,
+                            getHostPermits(hostPermits, forecastUri)));
+                }
+            } finally {
+                locationCursor.close();
+            }
+        }
 
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        if (!trackedLocations.contains(preferredLocation)) {
+            Uri forecastUri = buildPreferredForecastUri(context, preferredLocation);
+            fetchers.add(new ForecastFetcher(forecastUri,
+                    new ForecastFetcher.TrackedLocation(preferredLocation, -1, null, null, null),
+                    julianStartDay, getHostPermits(hostPermits, forecastUri)));
+            trackedLocations.add(preferredLocation);
+        }
+        // The locations of widgets that don't show the preferred one, the first time round
+        for (String locationSetting : WidgetLocations.getLocationSettings(context)) {
+            if (trackedLocations.add(locationSetting)) {
+                Uri forecastUri = buildForecastUri(locationSetting, null, null);
+                fetchers.add(new ForecastFetcher(forecastUri,
+                        new ForecastFetcher.TrackedLocation(locationSetting, -1, null, null, null),
+                        julianStartDay, getHostPermits(hostPermits, forecastUri)));
+            }
         }
+        return fetchers;
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    private static Uri buildPreferredForecastUri(Context context, String locationQuery) {
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (Utility.isLocationLatLonAvailable(context)) {
+            return buildForecastUri(locationQuery,
+                    String.valueOf(Utility.getLocationLatitude(context)),
+                    String.valueOf(Utility.getLocationLongitude(context)));
+        }
+        return buildForecastUri(locationQuery, null, null);
+    }
+
+    private static Semaphore getHostPermits(HashMap<String, Semaphore> hostPermits, Uri uri) {
+        Semaphore permits = hostPermits.get(uri.getHost());
+        if (permits == null) {
+            permits = new Semaphore(MAX_REQUESTS_PER_HOST);
+            hostPermits.put(uri.getHost(), permits);
+        }
+        return permits;
     }
 
     /**
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastItem;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.HashSet;
+
+/**
+ * The forecast of the preferred location from today on, read once after a sync has committed.
+ *
+ * The widgets, Muzei, the notification and the watch all show the same few values, so the sync
+ * adapter reads them once, publishes the snapshot, and every one of them takes it from here
+ * instead of going back to the provider.  A snapshot never changes once it's built, so it can
+ * be shared between threads as it is.
+ */
+public class WeatherSnapshot {
+    private static final String LOG_TAG = WeatherSnapshot.class.getSimpleName();
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+    private static final int INDEX_LOCATION_ID = 6;
+
+    private static volatile WeatherSnapshot sLatest;
+
+    private final String mLocationSetting;
+    private final long mStartDate;
+    // When it was read, in SystemClock.elapsedRealtime() terms
+    private final long mReadAt;
+
+    private final long[] mIds;
+    private final long[] mStableIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mShortDescs;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+
+    // The consumers that got this snapshot so far, so each one's latency is only logged once
+    private final HashSet<String> mDeliveredTo = new HashSet<String>();
+
+    private WeatherSnapshot(String locationSetting, long startDate, Cursor cursor) {
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mReadAt = SystemClock.elapsedRealtime();
+
+        int days = cursor == null ? 0 : cursor.getCount();
+        mIds = new long[days];
+        mStableIds = new long[days];
+        mDates = new long[days];
+        mWeatherIds = new int[days];
+        mShortDescs = new String[days];
+        mMaxTemps = new double[days];
+        mMinTemps = new double[days];
+        for (int i = 0; i < days && cursor.moveToPosition(i); i++) {
+            mIds[i] = cursor.getLong(INDEX_ID);
+            mDates[i] = cursor.getLong(INDEX_DATE);
+            mStableIds[i] = ForecastItem.getStableId(cursor.getLong(INDEX_LOCATION_ID), mDates[i]);
+            mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            mShortDescs[i] = cursor.getString(INDEX_SHORT_DESC);
+            mMaxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            mMinTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+        }
+    }
+
+    /**
+     * Reads the forecast of a location from today on.  Called by the sync adapter once the
+     * forecast is committed; use {@link #get(Context)} everywhere else.
+     */
+    static WeatherSnapshot read(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, today);
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                SNAPSHOT_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            return new WeatherSnapshot(locationSetting, today, cursor);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Makes the snapshot the one handed out by {@link #get(Context)}.
+     */
+    static void publish(WeatherSnapshot snapshot) {
+        sLatest = snapshot;
+    }
+
+    /**
+     * @return the snapshot published by the last sync, or if that one is for another location or
+     * an earlier day (or there is none, say because the process was restarted since), a newly
+     * read one
+     */
+    public static WeatherSnapshot get(Context context) {
+        return get(context, Utility.getPreferredLocation(context));
+    }
+
+    /**
+     * @return the published snapshot if it's of the location and still current, otherwise a
+     * newly read one.  Only snapshots of the preferred location are kept for the next caller.
+     */
+    public static WeatherSnapshot get(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        WeatherSnapshot snapshot = sLatest;
+        if (snapshot == null || snapshot.mStartDate != today ||
+                !snapshot.mLocationSetting.equals(locationSetting)) {
+            snapshot = read(context, locationSetting);
+            if (locationSetting.equals(Utility.getPreferredLocation(context))) {
+                sLatest = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Logs how long after it was read a consumer got done with the snapshot, the first time the
+     * consumer says so.
+     *
+     * @param consumer a name for the consumer, e.g. "Today widget"
+     */
+    public void recordDelivery(String consumer) {
+        synchronized (mDeliveredTo) {
+            if (!mDeliveredTo.add(consumer)) {
+                return;
+            }
+        }
+        Log.d(LOG_TAG, consumer + " updated " + (SystemClock.elapsedRealtime() - mReadAt) +
+                "ms after the forecast was read");
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return the number of days, starting with today.  Zero if there is no forecast yet.
+     */
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the _ID of the weather row of the day
+     */
+    public long getId(int day) {
+        return mIds[day];
+    }
+
+    /**
+     * @return an id for the day that stays the same from one sync to the next, the same one the
+     * forecast list uses, see {@link ForecastItem#getStableId(long, long)}
+     */
+    public long getStableId(int day) {
+        return mStableIds[day];
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public String getShortDesc(int day) {
+        return mShortDescs[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day];
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day];
+    }
+}
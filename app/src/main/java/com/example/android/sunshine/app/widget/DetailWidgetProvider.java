@@ -4,9 +4,9 @@ import android.annotation.TargetApi;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
@@ -18,7 +18,8 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
- * Provider for a scrollable weather detail widget
+ * Provider for a scrollable weather detail widget.  Each widget shows the location it was set up
+ * with, see {@link WidgetLocations}.
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetProvider extends AppWidgetProvider {
@@ -33,10 +34,11 @@ public class DetailWidgetProvider extends AppWidgetProvider {
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
             // Set up the collection
+            Intent adapterIntent = getRemoteAdapterIntent(context, appWidgetId);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                setRemoteAdapter(context, views);
+                setRemoteAdapter(views, adapterIntent);
             } else {
-                setRemoteAdapterV11(context, views);
+                setRemoteAdapterV11(views, adapterIntent);
             }
             boolean useDetailActivity = context.getResources()
                     .getBoolean(R.bool.use_detail_activity);
@@ -54,26 +56,41 @@ public class DetailWidgetProvider extends AppWidgetProvider {
         }
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetLocations.remove(context, appWidgetIds);
+    }
+
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
-                    new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+            WidgetRefreshDispatcher.requestRefresh(this, context,
+                    WidgetRefreshDispatcher.DETAIL_WIDGETS);
         }
     }
 
+    /**
+     * @return the intent for the remote adapter of a widget, which tells the service which
+     * widget, and so which location, the rows are for
+     */
+    private static Intent getRemoteAdapterIntent(Context context, int appWidgetId) {
+        Intent intent = new Intent(context, DetailWidgetRemoteViewsService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        // Intents that only differ in their extras are the same to the system, so the widget's
+        // id goes into the data too, or every widget would get the first one's rows
+        intent.setData(Uri.parse(intent.toUri(Intent.URI_INTENT_SCHEME)));
+        return intent;
+    }
+
     /**
      * Sets the remote adapter used to fill in the list items
      *
      * @param views RemoteViews to set the RemoteAdapter
      */
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
-    private void setRemoteAdapter(Context context, @NonNull final RemoteViews views) {
-        views.setRemoteAdapter(R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+    private void setRemoteAdapter(@NonNull final RemoteViews views, Intent intent) {
+        views.setRemoteAdapter(R.id.widget_list, intent);
     }
 
     /**
@@ -82,8 +99,7 @@ public class DetailWidgetProvider extends AppWidgetProvider {
      * @param views RemoteViews to set the RemoteAdapter
      */
     @SuppressWarnings("deprecation")
-    private void setRemoteAdapterV11(Context context, @NonNull final RemoteViews views) {
-        views.setRemoteAdapter(0, R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+    private void setRemoteAdapterV11(@NonNull final RemoteViews views, Intent intent) {
+        views.setRemoteAdapter(0, R.id.widget_list, intent);
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.AdapterView;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.WeatherSnapshot;
+
+/**
+ * Builds the rows of the detail widget.
+ *
+ * All the rows are built when the launcher says the data changed, with the art of every day
+ * loaded side by side, and getViewAt() only hands them out.  So a refresh takes about as long as
+ * the slowest image, rather than every row's work added up.  Art that isn't in by
+ * {@link #ART_TIMEOUT_MILLIS} is shown as the local icon until the next refresh.
+ *
+ * Rows are identified by their location and day, which stay the same from one sync to the next
+ * whatever happens to the _IDs of the weather rows, so the launcher can tell the rows apart from
+ * new ones.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class DetailWidgetRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
+    private static final String LOG_TAG = DetailWidgetRemoteViewsFactory.class.getSimpleName();
+
+    // How long the launcher waits for the art before the rows go out without it
+    static final long ART_TIMEOUT_MILLIS = 2000;
+
+    private final Context mContext;
+    private final int mAppWidgetId;
+
+    private Row[] mRows = new Row[0];
+
+    // The rows handed to the launcher since the last refresh, and the bytes of art in them,
+    // which is most of what they take in the binder transaction
+    private boolean[] mSentRows = new boolean[0];
+    private int mSentRowCount;
+    private long mSentBytes;
+
+    private static class Row {
+        final long mId;
+        // Everything the row shows, to tell if it changed
+        final String mContent;
+        final Bitmap mArt;
+        final RemoteViews mViews;
+        final int mArtBytes;
+
+        Row(long id, String content, Bitmap art, RemoteViews views) {
+            mId = id;
+            mContent = content;
+            mArt = art;
+            mViews = views;
+            mArtBytes = art == null ? 0 : WidgetArtCache.getByteCount(art);
+        }
+
+        boolean showsTheSame(String content, Bitmap art) {
+            return mArt == art && mContent.equals(content);
+        }
+    }
+
+    /**
+     * @param appWidgetId the widget the rows are for, which decides the location they show
+     */
+    DetailWidgetRemoteViewsFactory(Context context, int appWidgetId) {
+        mContext = context;
+        mAppWidgetId = appWidgetId;
+    }
+
+    @Override
+    public void onCreate() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        long start = SystemClock.elapsedRealtime();
+        // This method is called by the app hosting the widget (e.g., the launcher)
+        // However, our ContentProvider is not exported so it doesn't have access to the
+        // data. Therefore we need to clear (and finally restore) the calling identity so
+        // that calls use our process and permission, should the snapshot the last sync
+        // read not be current any more
+        final long identityToken = Binder.clearCallingIdentity();
+        WeatherSnapshot data = WeatherSnapshot.get(mContext,
+                WidgetLocations.getLocationSetting(mContext, mAppWidgetId));
+        Binder.restoreCallingIdentity(identityToken);
+
+        int days = data.getDayCount();
+        int[] weatherIds = new int[days];
+        for (int day = 0; day < days; day++) {
+            weatherIds[day] = data.getWeatherId(day);
+        }
+        WidgetArtCache.load(mContext, weatherIds, ART_TIMEOUT_MILLIS);
+
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        Row[] oldRows = mRows;
+        Row[] rows = new Row[days];
+        int reused = 0;
+        for (int day = 0; day < days; day++) {
+            long id = data.getStableId(day);
+            String description = data.getShortDesc(day);
+            String formattedDate = Utility.getFriendlyDayString(mContext, data.getDate(day),
+                    false);
+            String formattedMaxTemperature = Utility.formatTemperature(mContext,
+                    data.getMaxTemp(day), settings.isMetric());
+            String formattedMinTemperature = Utility.formatTemperature(mContext,
+                    data.getMinTemp(day), settings.isMetric());
+            String content = weatherIds[day] + "|" + description + "|" + formattedDate + "|" +
+                    formattedMaxTemperature + "|" + formattedMinTemperature + "|" +
+                    data.getLocationSetting();
+            // Whatever art didn't make it in time is left for the next refresh
+            Bitmap weatherArtImage = WidgetArtCache.peek(mContext, weatherIds[day]);
+
+            // Saves building the row again here; the launcher is sent every row either way
+            Row oldRow = findRow(oldRows, id);
+            if (oldRow != null && oldRow.showsTheSame(content, weatherArtImage)) {
+                rows[day] = oldRow;
+                reused++;
+                continue;
+            }
+            RemoteViews views = buildRow(data, day, weatherArtImage, description, formattedDate,
+                    formattedMaxTemperature, formattedMinTemperature);
+            rows[day] = new Row(id, content, weatherArtImage, views);
+        }
+
+        mRows = rows;
+        mSentRows = new boolean[days];
+        mSentRowCount = 0;
+        mSentBytes = 0;
+        Log.d(LOG_TAG, "Built " + (days - reused) + " rows and kept " + reused + " in " +
+                (SystemClock.elapsedRealtime() - start) + " ms");
+        data.recordDelivery("Detail widget");
+    }
+
+    // There are only a couple of weeks of rows, so they're simply searched
+    private static Row findRow(Row[] rows, long id) {
+        for (Row row : rows) {
+            if (row.mId == id) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private RemoteViews buildRow(WeatherSnapshot data, int position, Bitmap weatherArtImage,
+                                 String description, String formattedDate,
+                                 String formattedMaxTemperature,
+                                 String formattedMinTemperature) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                R.layout.widget_detail_list_item);
+        int weatherId = data.getWeatherId(position);
+        int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        long dateInMillis = data.getDate(position);
+        if (weatherArtImage != null) {
+            views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+        } else {
+            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_date, formattedDate);
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        final Intent fillInIntent = new Intent();
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                data.getLocationSetting(),
+                dateInMillis);
+        fillInIntent.setData(weatherUri);
+        views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    // Logs what a refresh sent once every row of it has been
+    private void recordSent(int position) {
+        if (mSentRows[position]) {
+            return;
+        }
+        mSentRows[position] = true;
+        mSentBytes += mRows[position].mArtBytes;
+        if (++mSentRowCount == mSentRows.length) {
+            Log.d(LOG_TAG, "Sent " + mSentRowCount + " rows with " + mSentBytes +
+                    " bytes of art to the launcher");
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mRows = new Row[0];
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.length;
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        if (position == AdapterView.INVALID_POSITION || position >= mRows.length) {
+            return null;
+        }
+        recordSent(position);
+        return mRows[position].mViews;
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (position < mRows.length)
+            return mRows[position].mId;
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+}
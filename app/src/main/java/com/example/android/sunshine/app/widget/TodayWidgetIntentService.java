@@ -20,12 +20,14 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -33,22 +35,84 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.WeatherSnapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
+ *
+ * Each widget shows the location it was set up with (see {@link WidgetLocations}), and today's
+ * weather of all of them is read at once.  Widgets that look the same share one RemoteViews, and
+ * a widget is only updated if what it shows changed since it was last updated, so a sync that
+ * didn't change today's forecast doesn't make the launcher redraw anything.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
+
+    /**
+     * The ids of widgets to update even if they seem to show the current forecast already, e.g.
+     * because the system asked for them to be updated.
+     */
+    public static final String EXTRA_FORCE_APPWIDGET_IDS = "force_appwidget_ids";
+
+    // What each widget was last updated with, as returned by getFingerprint().  Only touched on
+    // the service's worker thread.  If the process is restarted this starts out empty, and
+    // every widget is updated once.
+    private static final SparseArray<String> sFingerprints = new SparseArray<String>();
+
+    private static final String[] TODAY_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_LOCATION_SETTING = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    // Today's weather of a location, the way the widgets show it
+    private static class Today {
+        final int weatherArtResourceId;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+
+        Today(Context context, int weatherId, String description, double maxTemp,
+              double minTemp) {
+            weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+            this.description = description;
+            formattedMaxTemperature = Utility.formatTemperature(context, maxTemp);
+            formattedMinTemperature = Utility.formatTemperature(context, minTemp);
+        }
+    }
+
+    // The widgets that show the same thing, and so can share one RemoteViews
+    private static class Group {
+        final String fingerprint;
+        final int layoutId;
+        final Today today;
+        int[] appWidgetIds = new int[1];
+        int size;
+
+        Group(String fingerprint, int layoutId, Today today) {
+            this.fingerprint = fingerprint;
+            this.layoutId = layoutId;
+            this.today = today;
+        }
+
+        void add(int appWidgetId) {
+            if (size == appWidgetIds.length) {
+                appWidgetIds = Arrays.copyOf(appWidgetIds, size * 2);
+            }
+            appWidgetIds[size++] = appWidgetId;
+        }
+    }
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -60,37 +124,60 @@ public class TodayWidgetIntentService extends IntentService {
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
-
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
+        pruneFingerprints(appWidgetIds);
+        if (appWidgetIds.length == 0) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
-            return;
+        int[] forcedIds = intent.getIntArrayExtra(EXTRA_FORCE_APPWIDGET_IDS);
+        if (forcedIds != null) {
+            for (int appWidgetId : forcedIds) {
+                sFingerprints.remove(appWidgetId);
+            }
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+        // Find out which locations the widgets show
+        String preferredLocation = Utility.getPreferredLocation(this);
+        String[] widgetLocations = new String[appWidgetIds.length];
+        boolean showsPreferred = false;
+        HashSet<String> otherLocations = new HashSet<String>();
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            widgetLocations[i] = WidgetLocations.getLocationSetting(this, appWidgetIds[i]);
+            if (widgetLocations[i].equals(preferredLocation)) {
+                showsPreferred = true;
+            } else {
+                otherLocations.add(widgetLocations[i]);
+            }
+        }
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
+        // Today's data of the preferred location comes from the snapshot the last sync read, and
+        // that of all the others from a single query, however many widgets there are
+        HashMap<String, Today> todays = new HashMap<String, Today>();
+        WeatherSnapshot snapshot = null;
+        if (showsPreferred) {
+            snapshot = WeatherSnapshot.get(this);
+            if (snapshot.getDayCount() > 0) {
+                todays.put(preferredLocation, new Today(this, snapshot.getWeatherId(0),
+                        snapshot.getShortDesc(0), snapshot.getMaxTemp(0),
+                        snapshot.getMinTemp(0)));
+            }
+        }
+        if (!otherLocations.isEmpty()) {
+            readTodays(otherLocations, todays);
+        }
+
+        // Sort the widgets that need updating into groups that look the same: the same location,
+        // or at least the same weather, in the same size bucket
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        HashMap<String, Group> groups = new HashMap<String, Group>();
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            Today today = todays.get(widgetLocations[i]);
+            if (today == null) {
+                // Nothing synced for the location yet, the next sync will bring it
+                continue;
+            }
             // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetIds[i]);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,25 +186,98 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            String fingerprint = getFingerprint(layoutId, today.weatherArtResourceId,
+                    today.description, today.formattedMaxTemperature,
+                    today.formattedMinTemperature);
+            if (fingerprint.equals(sFingerprints.get(appWidgetIds[i]))) {
+                continue;
+            }
+            Group group = groups.get(fingerprint);
+            if (group == null) {
+                group = new Group(fingerprint, layoutId, today);
+                groups.put(fingerprint, group);
+            }
+            group.add(appWidgetIds[i]);
+        }
+
+        PendingIntent pendingIntent = null;
+        for (Group group : groups.values()) {
+            RemoteViews views = new RemoteViews(getPackageName(), group.layoutId);
 
             // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            Today today = group.today;
+            views.setImageViewResource(R.id.widget_icon, today.weatherArtResourceId);
             // Content Descriptions for RemoteViews were only added in ICS MR1
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+                setRemoteContentDescription(views, today.description);
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            views.setTextViewText(R.id.widget_description, today.description);
+            views.setTextViewText(R.id.widget_high_temperature, today.formattedMaxTemperature);
+            views.setTextViewText(R.id.widget_low_temperature, today.formattedMinTemperature);
 
             // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+            if (pendingIntent == null) {
+                Intent launchIntent = new Intent(this, MainActivity.class);
+                pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+            }
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on all the widgets of the group
+            int[] ids = Arrays.copyOf(group.appWidgetIds, group.size);
+            appWidgetManager.updateAppWidget(ids, views);
+            for (int appWidgetId : ids) {
+                sFingerprints.put(appWidgetId, group.fingerprint);
+            }
+        }
+        if (snapshot != null) {
+            snapshot.recordDelivery("Today widget");
+        }
+    }
+
+    // Reads today's weather of the locations, all in one query
+    private void readTodays(HashSet<String> locationSettings, HashMap<String, Today> todays) {
+        Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationsWithDate(
+                locationSettings.toArray(new String[locationSettings.size()]),
+                System.currentTimeMillis());
+        Cursor cursor = getContentResolver().query(uri, TODAY_COLUMNS, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                todays.put(cursor.getString(INDEX_LOCATION_SETTING), new Today(this,
+                        cursor.getInt(INDEX_WEATHER_ID), cursor.getString(INDEX_SHORT_DESC),
+                        cursor.getDouble(INDEX_MAX_TEMP), cursor.getDouble(INDEX_MIN_TEMP)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return everything a widget shows, so two widgets (or two updates of one) with the same
+     * fingerprint look the same
+     */
+    static String getFingerprint(int layoutId, int weatherArtResourceId, String description,
+                                 String formattedMaxTemperature, String formattedMinTemperature) {
+        return layoutId + "|" + weatherArtResourceId + "|" + description + "|" +
+                formattedMaxTemperature + "|" + formattedMinTemperature;
+    }
+
+    // Forgets the widgets that have been removed
+    private static void pruneFingerprints(int[] appWidgetIds) {
+        for (int i = sFingerprints.size() - 1; i >= 0; i--) {
+            int appWidgetId = sFingerprints.keyAt(i);
+            boolean exists = false;
+            for (int id : appWidgetIds) {
+                if (id == appWidgetId) {
+                    exists = true;
+                    break;
+                }
+            }
+            if (!exists) {
+                sFingerprints.removeAt(i);
+            }
         }
     }
 
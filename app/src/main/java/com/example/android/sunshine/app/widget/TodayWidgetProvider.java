@@ -28,13 +28,17 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  * Provider for a horizontally expandable widget showing today's weather.
  *
  * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * data retrieval is done on a background thread, which skips the widgets that already show the
+ * current forecast
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The system asks for an update when it has nothing to show for the widgets, say when
+        // they were just added, so they're updated even if we've sent them the same before
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FORCE_APPWIDGET_IDS, appWidgetIds));
     }
 
     @Override
@@ -43,11 +47,17 @@ public class TodayWidgetProvider extends AppWidgetProvider {
         context.startService(new Intent(context, TodayWidgetIntentService.class));
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetLocations.remove(context, appWidgetIds);
+    }
+
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetRefreshDispatcher.requestRefresh(this, context,
+                    WidgetRefreshDispatcher.TODAY_WIDGETS);
         }
     }
 }
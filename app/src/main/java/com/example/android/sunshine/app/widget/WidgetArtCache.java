@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.sync.WeatherSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The art pack images of the detail widget, decoded at the size of the widget's icon.
+ *
+ * Every bitmap set on a row is copied into the RemoteViews and sent to the launcher, so they have
+ * to be small: an image at its original size makes the refresh slow, and can be more than a
+ * binder transaction holds.  There are only a handful of conditions, so the bitmaps are kept
+ * here, keyed by their URL (which names both the art pack and the condition), and shared by all
+ * the rows and every refresh.  The cache is sized in bytes.
+ *
+ * Loading blocks, so only call {@link #get(Context, int)}, {@link #load(Context, int[], long)}
+ * and {@link #prewarm(Context, WeatherSnapshot)} off the main thread.
+ */
+public class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // Enough for the 8 conditions of a remote art pack at xxxhdpi, about 800 KB; the Sunshine
+    // pack is drawn from local graphics and never cached here
+    private static final int MAX_BYTES = 1024 * 1024;
+
+    // There are never more than a handful of conditions to load at once
+    private static final int MAX_LOAD_THREADS = 4;
+
+    // The sync can afford to wait for the art, the launcher can't
+    private static final long PREWARM_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static final LruCache<String, Bitmap> sBitmaps =
+            new LruCache<String, Bitmap>(MAX_BYTES) {
+                @Override
+                protected int sizeOf(String url, Bitmap bitmap) {
+                    return getByteCount(bitmap);
+                }
+            };
+
+    /**
+     * @return the art of a condition at the size of the widget's icon, or null if local graphics
+     * are used, the condition has no art or the art couldn't be loaded, and the icon resource
+     * should be shown instead
+     */
+    public static Bitmap get(Context context, int weatherId) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (settings.usingLocalGraphics()) {
+            return null;
+        }
+        String url = settings.getArtUrlForWeatherCondition(weatherId);
+        // Codes without art show the icon resource
+        if (url == null) {
+            return null;
+        }
+        Bitmap bitmap = sBitmaps.get(url);
+        if (bitmap == null) {
+            bitmap = fetch(context, url);
+            if (bitmap != null) {
+                sBitmaps.put(url, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return the art of a condition if it's cached, without loading it
+     */
+    public static Bitmap peek(Context context, int weatherId) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (settings.usingLocalGraphics()) {
+            return null;
+        }
+        String url = settings.getArtUrlForWeatherCondition(weatherId);
+        return url == null ? null : sBitmaps.get(url);
+    }
+
+    /**
+     * Loads the art of the conditions that aren't cached yet, side by side, so it takes as long
+     * as the slowest image rather than all of them added up.  Images that aren't in by the time
+     * the timeout is up are left to finish in the background, and are cached for the next time.
+     *
+     * @param weatherIds the conditions, in any order and with repeats
+     * @return true if all the art is cached
+     */
+    public static boolean load(final Context context, int[] weatherIds, long timeoutMillis) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (settings.usingLocalGraphics()) {
+            return true;
+        }
+        // Each image is only loaded once, however many days show it
+        HashSet<String> urls = new HashSet<String>();
+        List<Callable<Bitmap>> loads = new ArrayList<Callable<Bitmap>>();
+        for (final int weatherId : weatherIds) {
+            String url = settings.getArtUrlForWeatherCondition(weatherId);
+            // Codes without art have nothing to load
+            if (url != null && sBitmaps.get(url) == null && urls.add(url)) {
+                loads.add(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() {
+                        return get(context, weatherId);
+                    }
+                });
+            }
+        }
+        if (loads.isEmpty()) {
+            return true;
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_LOAD_THREADS, loads.size()));
+        List<Future<Bitmap>> futures = new ArrayList<Future<Bitmap>>(loads.size());
+        for (Callable<Bitmap> load : loads) {
+            futures.add(executor.submit(load));
+        }
+        // Lets the loads still running finish, and the threads go once they have
+        executor.shutdown();
+        try {
+            boolean loaded = true;
+            for (Future<Bitmap> future : futures) {
+                long timeLeft = deadline - System.currentTimeMillis();
+                loaded &= future.get(Math.max(0, timeLeft), TimeUnit.MILLISECONDS) != null;
+            }
+            return loaded;
+        } catch (TimeoutException e) {
+            Log.d(LOG_TAG, "Widget art not loaded after " + timeoutMillis + " ms");
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error loading widget art", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the art of the days of a snapshot that isn't cached yet, so the widgets don't wait
+     * for it when they pick the snapshot up.  Does nothing if there are no detail widgets.
+     */
+    public static void prewarm(Context context, WeatherSnapshot snapshot) {
+        if (SettingsSnapshot.get(context).usingLocalGraphics()) {
+            return;
+        }
+        int[] appWidgetIds = AppWidgetManager.getInstance(context)
+                .getAppWidgetIds(new ComponentName(context, DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        int[] weatherIds = new int[snapshot.getDayCount()];
+        for (int day = 0; day < weatherIds.length; day++) {
+            weatherIds[day] = snapshot.getWeatherId(day);
+        }
+        load(context, weatherIds, PREWARM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return the size of a bitmap in memory, which is also about what it takes in a parcel
+     */
+    public static int getByteCount(Bitmap bitmap) {
+        // Bitmap.getByteCount() is API 12
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static Bitmap fetch(Context context, String url) {
+        int size = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        try {
+            // The request isn't cleared, so Glide never reuses the bitmap for something else
+            return Glide.with(context.getApplicationContext())
+                    .load(url)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(size, size)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving widget art from " + url, e);
+            return null;
+        }
+    }
+}
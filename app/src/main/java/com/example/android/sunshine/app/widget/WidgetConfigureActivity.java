@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.EditText;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Asks which location a new widget should show: one of its own, or the one in the app's
+ * settings.
+ */
+public class WidgetConfigureActivity extends AppCompatActivity {
+
+    private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    private EditText mLocationView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // If the user backs out, the widget isn't added
+        setResult(RESULT_CANCELED);
+
+        Bundle extras = getIntent().getExtras();
+        if (extras != null) {
+            mAppWidgetId = extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID);
+        }
+        if (mAppWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            finish();
+            return;
+        }
+
+        setContentView(R.layout.activity_widget_configure);
+        mLocationView = (EditText) findViewById(R.id.widget_location);
+        mLocationView.setText(Utility.getPreferredLocation(this));
+        findViewById(R.id.widget_follow_preferred).setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        finishWithLocation(null);
+                    }
+                });
+        findViewById(R.id.widget_use_location).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                String locationSetting = mLocationView.getText().toString().trim();
+                finishWithLocation(TextUtils.isEmpty(locationSetting) ? null : locationSetting);
+            }
+        });
+    }
+
+    private void finishWithLocation(String locationSetting) {
+        // Typing in the preferred location is the same as following it
+        if (locationSetting != null &&
+                locationSetting.equals(Utility.getPreferredLocation(this))) {
+            locationSetting = null;
+        }
+        WidgetLocations.setLocationSetting(this, mAppWidgetId, locationSetting);
+        if (locationSetting != null) {
+            // The location may not have been synced yet
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+
+        // A widget with a configuration activity isn't updated when it's added, so it's up to
+        // us to ask its provider for the first update
+        AppWidgetProviderInfo info = AppWidgetManager.getInstance(this)
+                .getAppWidgetInfo(mAppWidgetId);
+        if (info != null) {
+            sendBroadcast(new Intent(AppWidgetManager.ACTION_APPWIDGET_UPDATE)
+                    .setComponent(info.provider)
+                    .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[]{mAppWidgetId}));
+        }
+
+        setResult(RESULT_OK, new Intent()
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId));
+        finish();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The location each widget was set up to show.  A widget that wasn't given one shows the
+ * preferred location, and follows it when it changes.
+ *
+ * They're kept in their own preferences file, keyed by the widget's id, so the app's settings
+ * don't see them come and go.
+ */
+public class WidgetLocations {
+
+    private static final String PREFS_NAME = "widget_locations";
+    private static final String KEY_PREFIX = "location_";
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the location the widget shows
+     */
+    public static String getLocationSetting(Context context, int appWidgetId) {
+        String locationSetting = getPrefs(context).getString(KEY_PREFIX + appWidgetId, null);
+        return locationSetting != null ? locationSetting : Utility.getPreferredLocation(context);
+    }
+
+    /**
+     * @param locationSetting the location for the widget to show, or null to have it show the
+     *                        preferred location
+     */
+    public static void setLocationSetting(Context context, int appWidgetId,
+                                          String locationSetting) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        if (locationSetting == null) {
+            editor.remove(KEY_PREFIX + appWidgetId);
+        } else {
+            editor.putString(KEY_PREFIX + appWidgetId, locationSetting);
+        }
+        editor.commit();
+    }
+
+    /**
+     * Forgets the locations of widgets that have been deleted.
+     */
+    public static void remove(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(KEY_PREFIX + appWidgetId);
+        }
+        editor.commit();
+    }
+
+    /**
+     * @return the locations widgets were set up to show, other than by following the preferred
+     * location.  The sync keeps these up to date along with the preferred one.
+     */
+    public static Set<String> getLocationSettings(Context context) {
+        Set<String> locationSettings = new HashSet<String>();
+        for (Map.Entry<String, ?> entry : getPrefs(context).getAll().entrySet()) {
+            if (entry.getKey().startsWith(KEY_PREFIX) && entry.getValue() instanceof String) {
+                locationSettings.add((String) entry.getValue());
+            }
+        }
+        return locationSettings;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Refreshes the widgets, once for a burst of requests.
+ *
+ * A sync, a refresh from the watch and a settings change can all ask for the widgets to be
+ * refreshed within moments of each other.  The first request starts a short window, the
+ * requests that come in during it are merged into it, and when it's over each kind of widget
+ * that was asked for is refreshed once.  The window isn't extended by later requests, so a steady
+ * stream of them still gets the widgets refreshed every {@link #WINDOW_MILLIS}.
+ *
+ * Nothing keeps the process alive through the window on its own, so requests from a receiver
+ * hold on to its broadcast until the refresh is done.
+ */
+public class WidgetRefreshDispatcher {
+    private static final String LOG_TAG = WidgetRefreshDispatcher.class.getSimpleName();
+
+    public static final int TODAY_WIDGETS = 1;
+    public static final int DETAIL_WIDGETS = 1 << 1;
+    public static final int ALL_WIDGETS = TODAY_WIDGETS | DETAIL_WIDGETS;
+
+    // How long requests are collected before the widgets are refreshed
+    static final long WINDOW_MILLIS = 500;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // All guarded by the class
+    private static Context sContext;
+    private static int sPending;
+    private static long sRequestCount;
+    private static long sMergedCount;
+    private static long sRefreshCount;
+    // The broadcasts of the receivers waiting for the refresh
+    private static List<BroadcastReceiver.PendingResult> sPendingResults =
+            new ArrayList<BroadcastReceiver.PendingResult>();
+
+    private static final Runnable sDispatch = new Runnable() {
+        @Override
+        public void run() {
+            Context context;
+            int widgets;
+            List<BroadcastReceiver.PendingResult> pendingResults;
+            synchronized (WidgetRefreshDispatcher.class) {
+                context = sContext;
+                widgets = sPending;
+                sPending = 0;
+                pendingResults = sPendingResults;
+                sPendingResults = new ArrayList<BroadcastReceiver.PendingResult>();
+            }
+            refresh(context, widgets);
+            if (!pendingResults.isEmpty()) {
+                finish(pendingResults);
+            }
+        }
+    };
+
+    /**
+     * Asks for some kinds of widgets to be refreshed, soon.
+     *
+     * @param widgets any of {@link #TODAY_WIDGETS} and {@link #DETAIL_WIDGETS}, or
+     *                {@link #ALL_WIDGETS}
+     */
+    public static void requestRefresh(Context context, int widgets) {
+        synchronized (WidgetRefreshDispatcher.class) {
+            for (int widget = TODAY_WIDGETS; widget <= DETAIL_WIDGETS; widget <<= 1) {
+                if ((widgets & widget) == 0) {
+                    continue;
+                }
+                sRequestCount++;
+                if ((sPending & widget) != 0) {
+                    sMergedCount++;
+                }
+            }
+            boolean windowOpen = sPending != 0;
+            sPending |= widgets;
+            sContext = context.getApplicationContext();
+            if (!windowOpen) {
+                sHandler.postDelayed(sDispatch, WINDOW_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Asks for some kinds of widgets to be refreshed, soon, from a receiver's onReceive().  The
+     * receiver's broadcast is kept going until the refresh is done, so the process isn't
+     * reclaimed in the meantime.  Before Honeycomb, where a receiver can't do that, the widgets
+     * are refreshed right away instead.
+     */
+    public static void requestRefresh(BroadcastReceiver receiver, Context context, int widgets) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            holdBroadcast(receiver);
+            requestRefresh(context, widgets);
+        } else {
+            refresh(context.getApplicationContext(), widgets);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void holdBroadcast(BroadcastReceiver receiver) {
+        BroadcastReceiver.PendingResult pendingResult = receiver.goAsync();
+        // There's none outside of onReceive()
+        if (pendingResult == null) {
+            return;
+        }
+        synchronized (WidgetRefreshDispatcher.class) {
+            sPendingResults.add(pendingResult);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void finish(List<BroadcastReceiver.PendingResult> pendingResults) {
+        for (BroadcastReceiver.PendingResult pendingResult : pendingResults) {
+            pendingResult.finish();
+        }
+    }
+
+    private static void refresh(Context context, int widgets) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        if ((widgets & TODAY_WIDGETS) != 0) {
+            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                    new ComponentName(context, TodayWidgetProvider.class));
+            // Don't even start the service if there are no widgets to update
+            if (appWidgetIds.length > 0) {
+                context.startService(new Intent(context, TodayWidgetIntentService.class));
+            }
+        }
+        // Collection widgets are Honeycomb and up
+        if ((widgets & DETAIL_WIDGETS) != 0 &&
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            notifyDetailWidgets(context, appWidgetManager);
+        }
+        synchronized (WidgetRefreshDispatcher.class) {
+            sRefreshCount++;
+            Log.d(LOG_TAG, "Refreshed widgets " + sRefreshCount + " times for " +
+                    sRequestCount + " requests, " + sMergedCount + " merged");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void notifyDetailWidgets(Context context, AppWidgetManager appWidgetManager) {
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class));
+        if (appWidgetIds.length > 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        }
+    }
+
+    /**
+     * @return how many refreshes of a kind of widget were asked for, so far
+     */
+    public static synchronized long getRequestCount() {
+        return sRequestCount;
+    }
+
+    /**
+     * @return how many of the requests were merged into an earlier one, rather than causing a
+     * refresh of their own
+     */
+    public static synchronized long getMergedCount() {
+        return sMergedCount;
+    }
+
+    /**
+     * @return how many times the widgets were refreshed
+     */
+    public static synchronized long getRefreshCount() {
+        return sRefreshCount;
+    }
+}
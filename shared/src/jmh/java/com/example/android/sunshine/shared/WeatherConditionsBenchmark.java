@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the condition table with the if/else chains it replaced, over a mix of
+ * every code OpenWeatherMap sends, with the common ones (clear and cloudy skies, rain) weighted
+ * the way a forecast list sees them.
+ *
+ * Run with ./gradlew :shared:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WeatherConditionsBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    private static final int[] ALL_CODES = {
+            200, 201, 202, 210, 211, 212, 221, 230, 231, 232,
+            300, 301, 302, 310, 311, 312, 313, 314, 321,
+            500, 501, 502, 503, 504, 511, 520, 521, 522, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+    private static final int[] COMMON_CODES = {800, 801, 802, 803, 804, 500, 501};
+
+    private static final String ART_PACK_FORMAT =
+            "https://raw.githubusercontent.com/udacity/Sunshine-Version-2/sunshine_master/app/src/main/res/drawable-xxhdpi/art_%s.png";
+
+    private final int[] mCodes = new int[LOOKUPS];
+    private String[] mArtUrls;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < LOOKUPS; i++) {
+            mCodes[i] = i % 2 == 0
+                    ? COMMON_CODES[(i / 2) % COMMON_CODES.length]
+                    : ALL_CODES[(i / 2) % ALL_CODES.length];
+        }
+        mArtUrls = WeatherConditions.formatArtUrls(ART_PACK_FORMAT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void conditionChain(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(getConditionByChain(code));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void conditionTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.getCondition(code));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void artUrlChain(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(getArtUrlByChain(code));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void artUrlTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            int condition = WeatherConditions.getCondition(code);
+            blackhole.consume(condition == WeatherConditions.NONE ? null : mArtUrls[condition]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void imageUrlChain(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(getImageUrlByChain(code));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void imageUrlTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.getImageUrl(code));
+        }
+    }
+
+    // The chain that Utility.getIconResourceForWeatherCondition, getArtResourceForWeatherCondition
+    // and MyWatchFace.getIconForWeatherId each walked, down to the index of the condition
+    private static int getConditionByChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherConditions.STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherConditions.LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherConditions.RAIN;
+        } else if (weatherId == 511) {
+            return WeatherConditions.SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherConditions.RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherConditions.SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherConditions.FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return WeatherConditions.STORM;
+        } else if (weatherId == 800) {
+            return WeatherConditions.CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherConditions.LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherConditions.CLOUDS;
+        }
+        return WeatherConditions.NONE;
+    }
+
+    // Utility.getArtUrlForWeatherCondition, formatting the URL on every call
+    private static String getArtUrlByChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, ART_PACK_FORMAT, "clouds");
+        }
+        return null;
+    }
+
+    // Utility.getImageUrlForWeatherCondition
+    private static String getImageUrlByChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
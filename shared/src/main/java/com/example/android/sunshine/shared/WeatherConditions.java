@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Sorts OpenWeatherMap condition codes into the handful of conditions Sunshine has icons and
+ * art for, shared by the phone app and the watch face.
+ *
+ * The codes all lie below 1000, so the condition of every possible code is worked out once, up
+ * front, into an array indexed by the code.  Looking one up is a bounds check and an array read,
+ * which matters since it happens for every list item, widget row and watch update.  Each module
+ * keeps its own arrays of resource ids indexed by condition.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    // The conditions, in the order of the arrays indexed by them
+    public static final int NONE = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+    public static final int CONDITION_COUNT = 8;
+
+    // The highest code the table covers
+    public static final int MAX_CODE = 999;
+
+    // What the art of each condition is called, e.g. in the art pack URLs
+    private static final String[] ART_KEYS = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    // Photos for each condition, e.g. for Muzei
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // Tornadoes get the storm icon and art, but a photo of their own
+    private static final int TORNADO = 781;
+    private static final String TORNADO_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+    private static final byte[] sConditions = new byte[MAX_CODE + 1];
+
+    static {
+        Arrays.fill(sConditions, (byte) NONE);
+        fill(200, 232, STORM);
+        fill(300, 321, LIGHT_RAIN);
+        fill(500, 504, RAIN);
+        fill(511, 511, SNOW);
+        fill(520, 531, RAIN);
+        fill(600, 622, SNOW);
+        fill(TORNADO, TORNADO, STORM);
+        fill(701, 761, FOG);
+        fill(800, 800, CLEAR);
+        fill(801, 801, LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int firstCode, int lastCode, int condition) {
+        Arrays.fill(sConditions, firstCode, lastCode + 1, (byte) condition);
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the condition constants, or NONE if the code isn't one we have art for
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_CODE) {
+            return NONE;
+        }
+        return sConditions[weatherId];
+    }
+
+    /**
+     * @return what the art of the condition is called, or null for NONE
+     */
+    public static String getArtKey(int condition) {
+        return condition == NONE ? null : ART_KEYS[condition];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId == TORNADO) {
+            return TORNADO_IMAGE_URL;
+        }
+        int condition = getCondition(weatherId);
+        return condition == NONE ? null : IMAGE_URLS[condition];
+    }
+
+    /**
+     * Fills an art pack URL format in for every condition, so it only has to be done once per
+     * art pack rather than once per lookup.
+     *
+     * @param format a URL format with a single %s for the art key
+     * @return the URLs, indexed by condition
+     */
+    public static String[] formatArtUrls(String format) {
+        String[] urls = new String[CONDITION_COUNT];
+        for (int condition = 0; condition < CONDITION_COUNT; condition++) {
+            urls[condition] = String.format(Locale.US, format, ART_KEYS[condition]);
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import junit.framework.TestCase;
+
+public class TestWeatherConditions extends TestCase {
+
+    public void testConditionRanges() {
+        assertCondition(WeatherConditions.STORM, 200, 232);
+        assertCondition(WeatherConditions.LIGHT_RAIN, 300, 321);
+        assertCondition(WeatherConditions.RAIN, 500, 504);
+        assertCondition(WeatherConditions.SNOW, 511, 511);
+        assertCondition(WeatherConditions.RAIN, 520, 531);
+        assertCondition(WeatherConditions.SNOW, 600, 622);
+        assertCondition(WeatherConditions.FOG, 701, 761);
+        assertCondition(WeatherConditions.STORM, 781, 781);
+        assertCondition(WeatherConditions.CLEAR, 800, 800);
+        assertCondition(WeatherConditions.LIGHT_CLOUDS, 801, 801);
+        assertCondition(WeatherConditions.CLOUDS, 802, 804);
+    }
+
+    public void testUnknownCodes() {
+        for (int code : new int[]{-1, 0, 199, 233, 505, 762, 771, 805, 900, 962,
+                WeatherConditions.MAX_CODE, WeatherConditions.MAX_CODE + 1, Integer.MAX_VALUE}) {
+            assertEquals("Error: Code " + code + " shouldn't have a condition",
+                    WeatherConditions.NONE, WeatherConditions.getCondition(code));
+            assertNull(WeatherConditions.getImageUrl(code));
+        }
+        assertNull(WeatherConditions.getArtKey(WeatherConditions.NONE));
+    }
+
+    public void testImageUrls() {
+        assertTrue(WeatherConditions.getImageUrl(211).contains("Thunderstorm"));
+        assertTrue(WeatherConditions.getImageUrl(741).contains("fog"));
+        // Tornadoes share the storm art, but not the photo
+        assertTrue(WeatherConditions.getImageUrl(781).contains("Raised_dust"));
+    }
+
+    public void testFormatArtUrls() {
+        String[] urls = WeatherConditions.formatArtUrls("http://example.com/art_%s.png");
+        assertEquals(WeatherConditions.CONDITION_COUNT, urls.length);
+        assertEquals("http://example.com/art_light_clouds.png",
+                urls[WeatherConditions.LIGHT_CLOUDS]);
+        assertEquals("http://example.com/art_clouds.png", urls[WeatherConditions.CLOUDS]);
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            assertEquals("http://example.com/art_" + WeatherConditions.getArtKey(condition) + ".png",
+                    urls[condition]);
+        }
+    }
+
+    private static void assertCondition(int condition, int firstCode, int lastCode) {
+        for (int code = firstCode; code <= lastCode; code++) {
+            assertEquals("Error: Wrong condition for code " + code,
+                    condition, WeatherConditions.getCondition(code));
+        }
+    }
+}
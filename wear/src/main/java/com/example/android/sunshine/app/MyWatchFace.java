@@ -43,6 +43,7 @@ import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 import android.widget.Toast;
 
+import com.example.android.sunshine.shared.WeatherConditions;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -86,6 +87,20 @@ public class MyWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    /**
+     * The icons of the WeatherConditions, indexed by condition.
+     */
+    private static final int[] CONDITION_ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
 
 
     @Override
@@ -547,29 +562,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
     }
 
     private int getIconForWeatherId(int weatherId) {
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        int condition = WeatherConditions.getCondition(weatherId);
+        return condition == WeatherConditions.NONE ? -1 : CONDITION_ICONS[condition];
     }
 }